@@ -2,6 +2,7 @@ package ch.obermuhlner.astro.app
 
 import ch.obermuhlner.astro.gradient.Point
 import ch.obermuhlner.astro.gradient.filter.*
+import ch.obermuhlner.astro.gradient.graph.ImageNode
 import ch.obermuhlner.astro.gradient.operation.SubtractImageOperation
 import ch.obermuhlner.astro.gradient.operation.SubtractLinearImageOperation
 import ch.obermuhlner.astro.gradient.operation.SubtractSplineImageOperation
@@ -128,11 +129,14 @@ object Astrophotography {
                 }
                 GlowStrategy.Blur -> {
                     println("Despeckling $despeckleRadius and blurring $blurRadius pixels")
-                    val despeckledImage = PseudoMedianFilter(despeckleRadius, ColorModel.RGB).filter(inputImage)
-                    GaussianBlurFilter(blurRadius, ColorModel.RGB).filter(despeckledImage)
+                    ImageNode.source(inputImage)
+                            .filter(PseudoMedianFilter(despeckleRadius, ColorModel.RGB))
+                            .filter(GaussianBlurFilter(blurRadius, ColorModel.RGB))
+                            .image()
                 }
                 GlowStrategy.Gradient -> {
                     val gradientFilter = GradientInterpolationFilter(interpolationPower)
+                    gradientFilter.gridSpacing = 16
                     if (points.isEmpty()) {
                         println("Interpolating gradient between automatically determined points")
                         autoSetFixPoints(gradientFilter, inputImage)
@@ -162,7 +166,9 @@ object Astrophotography {
                 }
             }
             val outputImage = ImageCreator.create(inputImage.width, inputImage.height, ImageQuality.High)
-            subtractOperation.operation(inputImage, gradientImage, outputImage)
+            ImageNode.source(inputImage)
+                    .operation(subtractOperation, gradientImage)
+                    .render(outputImage)
 
             val outputFile = File(sourceFile.parent, "output_" + sourceFile.name)
             println("Saving $outputFile")
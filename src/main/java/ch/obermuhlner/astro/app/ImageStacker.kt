@@ -4,6 +4,7 @@ import ch.obermuhlner.astro.gradient.align.SimpleImageAligner
 import ch.obermuhlner.astro.image.*
 import ch.obermuhlner.astro.image.color.ColorModel
 import com.xenomachina.argparser.ArgParser
+import java.io.Closeable
 import java.io.File
 
 object ImageStacker {
@@ -105,8 +106,18 @@ object ImageStacker {
         val sources by parser.positionalList(
             help = "source filename")
 
+        val imageCache = ImageCache()
+
         println("Loading base ${sources[0]}")
-        val baseImage = ImageReader.read(File(sources[0]), ImageQuality.High).copyImage()
+        val baseImage = imageCache.read(File(sources[0]), ImageQuality.High).let { image ->
+            try {
+                image.copyImage()
+            } finally {
+                if (image is Closeable) {
+                    image.close()
+                }
+            }
+        }
 
         val aligner = SimpleImageAligner(200)
 
@@ -121,7 +132,7 @@ object ImageStacker {
                 if(source == sources[0]) {
                     baseImage
                 } else {
-                    ImageReader.read(sourceFile, ImageQuality.High).copyImage()
+                    imageCache.read(sourceFile, ImageQuality.High)
                 }
             }
             val alignment = measureElapsed("Aligning with base") {
@@ -140,6 +151,9 @@ object ImageStacker {
             } else {
                 println("Skipping image because error > $errorThreshold")
             }
+            if (image is Closeable) {
+                image.close()
+            }
             println()
         }
 
@@ -150,20 +164,8 @@ object ImageStacker {
 
     private fun writeAverageImage(image: DoubleImage, count: Int, file: File) {
         measureElapsed("Saved output $file") {
-            val tiffImage = ImageCreator.createTiff(image.width, image.height)
-
-            val color = DoubleArray(3)
-            for (y in 0 until image.height) {
-                for (x in 0 until image.width) {
-                    image.getPixel(x, y, ColorModel.RGB, color)
-                    color[0] /= count.toDouble()
-                    color[1] /= count.toDouble()
-                    color[2] /= count.toDouble()
-                    tiffImage.setPixel(x, y, ColorModel.RGB, color)
-                }
-            }
-
-            ImageWriter.write(tiffImage, file)
+            // the sum is scaled to the average strip by strip while writing
+            ImageWriter.writeTiff(image, file, TiffCompression.Deflate, 1.0 / count)
         }
     }
 
@@ -191,4 +193,4 @@ object ImageStacker {
         println("$name in $deltaMillis ms")
         return result
     }
-}
\ No newline at end of file
+}
@@ -22,15 +22,21 @@ class Histogram constructor(val colorModel: ColorModel, val binCount: Int) {
 
     @JvmOverloads
     fun sampleImage(image: DoubleImage, x: Int = 0, y: Int = 0, width: Int = image.width, height: Int = image.height) {
-        val pixel = DoubleArray(3)
         clear()
-        for (iy in 0 until height) {
-            for (ix in 0 until width) {
-                if (image.isInside(x + ix, y + iy)) {
-                    image.getPixel(x + ix, y + iy, colorModel, pixel)
-                    addSample(pixel, 0)
-                    addSample(pixel, 1)
-                    addSample(pixel, 2)
+        val x1 = max(0, x)
+        val y1 = max(0, y)
+        val x2 = min(image.width, x + width)
+        val y2 = min(image.height, y + height)
+        if (x2 > x1) {
+            val samples = DoubleArray((x2 - x1) * 3)
+            for (iy in y1 until y2) {
+                image.getRegion(x1, iy, x2 - x1, 1, colorModel, samples)
+                var index = 0
+                while (index < samples.size) {
+                    addSample(samples[index + 0], 0)
+                    addSample(samples[index + 1], 1)
+                    addSample(samples[index + 2], 2)
+                    index += 3
                 }
             }
         }
@@ -50,8 +56,8 @@ class Histogram constructor(val colorModel: ColorModel, val binCount: Int) {
         }
     }
 
-    private fun addSample(pixel: DoubleArray, sampleIndex: Int) {
-        var value: Double = pixel[sampleIndex]
+    private fun addSample(sample: Double, sampleIndex: Int) {
+        var value: Double = sample
         if (colorModel === ColorModel.HSV && sampleIndex == ColorModel.HSV.H) {
             value /= 360.0
         }
@@ -1,19 +1,36 @@
 package ch.obermuhlner.astro.gradient.filter
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.ScratchArrays
+import ch.obermuhlner.astro.image.TileScheduler
 import ch.obermuhlner.astro.image.color.ColorModel
 
 abstract class AbstractFilter @JvmOverloads constructor(private val defaultColorModel: ColorModel? = null) : Filter {
+    var scheduler: TileScheduler = TileScheduler.default
+
+    private val scratchArrays = ScratchArrays(2)
+
+    // filterPixel() is called concurrently for different tiles, so reading the source must be thread safe
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
         val colorModel = defaultColorModel ?: target.colorModel
-        val color = DoubleArray(3)
-        for (y in 0 until height) {
-            for (x in 0 until width) {
-                target.setPixel(x, y, colorModel, filterPixel(source, x, y, colorModel, color))
+        scheduler.forEachTile(0, 0, width, height) { tileX, tileY, tileWidth, tileHeight ->
+            scratchArrays.use { scratch ->
+                val color = scratch.array(0, 3)
+                val samples = scratch.array(1, tileWidth * tileHeight * 3)
+                var index = 0
+                for (y in tileY until tileY + tileHeight) {
+                    for (x in tileX until tileX + tileWidth) {
+                        System.arraycopy(filterPixel(source, x, y, colorModel, color), 0, samples, index, 3)
+                        index += 3
+                    }
+                }
+                synchronized(target) {
+                    target.setRegion(tileX, tileY, tileWidth, tileHeight, colorModel, samples)
+                }
             }
         }
         return target
     }
 
     protected abstract fun filterPixel(source: DoubleImage, x: Int, y: Int, colorModel: ColorModel, color: DoubleArray): DoubleArray
-}
\ No newline at end of file
+}
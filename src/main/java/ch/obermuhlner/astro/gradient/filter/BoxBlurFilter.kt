@@ -1,31 +1,48 @@
 package ch.obermuhlner.astro.gradient.filter
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
+import ch.obermuhlner.astro.image.SummedAreaTable
 import ch.obermuhlner.astro.image.color.ColorModel
 
-class BoxBlurFilter constructor(private val radius: Int, private val model: ColorModel) : AbstractFilter() {
-    private val kernelSize: Int = (radius + radius + 1) * (radius + radius + 1)
+class BoxBlurFilter constructor(private val radius: Int, private val model: ColorModel) : Filter {
+    private val kernelWidth: Int = radius + radius + 1
+    private val kernelSize: Int = kernelWidth * kernelWidth
 
-    override fun filterPixel(source: DoubleImage, x: Int, y: Int, colorModel: ColorModel, color: DoubleArray): DoubleArray {
-        var sum0 = 0.0
-        var sum1 = 0.0
-        var sum2 = 0.0
-        for (kx in x - radius until x + radius) {
-            for (ky in y - radius until y + radius) {
-                source.getPixel(kx, ky, model, color)
-                sum0 += color[0]
-                sum1 += color[1]
-                sum2 += color[2]
+    override val support: Int
+        get() = radius
+
+    override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val summedAreaTable = SummedAreaTable(source, model)
+        val lock = Any()
+        Parallel.forEachBand(height, BAND_HEIGHT) { startY, endY ->
+            val samples = DoubleArray(width * (endY - startY) * 3)
+            val color = DoubleArray(3)
+            var index = 0
+            for (y in startY until endY) {
+                for (x in 0 until width) {
+                    summedAreaTable.clampedSum(x - radius, y - radius, kernelWidth, kernelWidth, color)
+                    samples[index++] = color[0] / kernelSize
+                    samples[index++] = color[1] / kernelSize
+                    samples[index++] = color[2] / kernelSize
+                }
+            }
+            synchronized(lock) {
+                target.setRegion(0, startY, width, endY - startY, model, samples)
             }
         }
-        color[0] = sum0 / kernelSize
-        color[1] = sum1 / kernelSize
-        color[2] = sum2 / kernelSize
-        return color
+        return target
     }
 
     override fun toString(): String {
         return "BoxBlur(radius=$radius)"
     }
 
-}
\ No newline at end of file
+    companion object {
+        private const val BAND_HEIGHT = 16
+    }
+}
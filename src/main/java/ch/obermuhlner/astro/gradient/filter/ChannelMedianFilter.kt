@@ -0,0 +1,159 @@
+package ch.obermuhlner.astro.gradient.filter
+
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
+import ch.obermuhlner.astro.image.color.ColorModel
+import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.math.max
+import kotlin.math.min
+
+// Median of every HSV channel on its own, in constant time per pixel (see HistogramMedian).
+// Unlike MedianFilter the result is in general not one of the window pixels, but a combination of the channel medians.
+// The image is processed in full height column stripes, so that the halo of a stripe is only read and histogrammed once.
+class ChannelMedianFilter(private val radius: Int) : Filter {
+    override val support: Int
+        get() = radius
+
+    override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val lock = Any()
+        val regionHeight = min(source.height, height + radius)
+        val quantizer = Quantizer(source, min(source.width, width + radius), regionHeight, lock)
+
+        // the histograms are large, they are only kept for the duration of this call
+        val workspaces = ConcurrentLinkedQueue<Workspace>()
+        Parallel.forEachBand(width, STRIPE_WIDTH) { startX, endX ->
+            val workspace = workspaces.poll() ?: Workspace(STRIPE_WIDTH + radius + radius)
+            try {
+                filterStripe(source, target, startX, endX, height, regionHeight, quantizer, workspace, lock)
+            } finally {
+                workspaces.add(workspace)
+            }
+        }
+        return target
+    }
+
+    private fun filterStripe(source: DoubleImage, target: DoubleImage, startX: Int, endX: Int, height: Int, regionHeight: Int,
+                             quantizer: Quantizer, workspace: Workspace, lock: Any) {
+        val regionX = max(0, startX - radius)
+        val regionWidth = min(source.width, endX + radius) - regionX
+        val stripeWidth = endX - startX
+
+        val values = workspace.values(regionWidth * regionHeight)
+        for (bandY in 0 until regionHeight step BAND_HEIGHT) {
+            val bandHeight = min(BAND_HEIGHT, regionHeight - bandY)
+            val samples = workspace.samples(regionWidth * bandHeight * 3)
+            synchronized(lock) {
+                source.getRegion(regionX, bandY, regionWidth, bandHeight, ColorModel.HSV, samples)
+            }
+            val offset = bandY * regionWidth
+            for (channel in 0 until 3) {
+                val channelValues = values[channel]
+                for (i in 0 until regionWidth * bandHeight) {
+                    channelValues[offset + i] = quantizer.quantize(channel, samples[i * 3 + channel])
+                }
+            }
+        }
+
+        val medians = workspace.medians(stripeWidth * height * 3)
+        for (channel in 0 until 3) {
+            workspace.histogramMedian.filter(values[channel], regionWidth, regionHeight, radius, startX - regionX, 0, stripeWidth, height,
+                    medians, channel, 3, channel != ColorModel.HSV.H)
+        }
+
+        for (bandY in 0 until height step BAND_HEIGHT) {
+            val bandHeight = min(BAND_HEIGHT, height - bandY)
+            val samples = workspace.samples(stripeWidth * bandHeight * 3)
+            val offset = bandY * stripeWidth * 3
+            for (i in 0 until stripeWidth * bandHeight * 3) {
+                samples[i] = quantizer.value(i % 3, medians[offset + i].toDouble())
+            }
+            synchronized(lock) {
+                target.setRegion(startX, bandY, stripeWidth, bandHeight, ColorModel.HSV, samples)
+            }
+        }
+    }
+
+    override fun toString(): String {
+        return "ChannelMedianFilter(radius=$radius)"
+    }
+
+    // maps every channel linearly from its range in the source to the histogram bins,
+    // the same mapping is used for all stripes so that they match at their borders
+    private class Quantizer(source: DoubleImage, width: Int, height: Int, lock: Any) {
+        private val minValues = DoubleArray(3) { Double.POSITIVE_INFINITY }
+        private val scales = DoubleArray(3)
+
+        init {
+            val maxValues = DoubleArray(3) { Double.NEGATIVE_INFINITY }
+            Parallel.forEachBand(height, BAND_HEIGHT) { startY, endY ->
+                val samples = DoubleArray(width * 3)
+                val bandMin = DoubleArray(3) { Double.POSITIVE_INFINITY }
+                val bandMax = DoubleArray(3) { Double.NEGATIVE_INFINITY }
+                for (y in startY until endY) {
+                    synchronized(lock) {
+                        source.getRegion(0, y, width, 1, ColorModel.HSV, samples)
+                    }
+                    for (i in 0 until width * 3) {
+                        val channel = i % 3
+                        bandMin[channel] = min(bandMin[channel], samples[i])
+                        bandMax[channel] = max(bandMax[channel], samples[i])
+                    }
+                }
+                synchronized(maxValues) {
+                    for (channel in 0 until 3) {
+                        minValues[channel] = min(minValues[channel], bandMin[channel])
+                        maxValues[channel] = max(maxValues[channel], bandMax[channel])
+                    }
+                }
+            }
+            for (channel in 0 until 3) {
+                scales[channel] = if (maxValues[channel] > minValues[channel]) (HistogramMedian.BINS - 1) / (maxValues[channel] - minValues[channel]) else 0.0
+            }
+        }
+
+        fun quantize(channel: Int, value: Double): Char {
+            return max(0, min(HistogramMedian.BINS - 1, ((value - minValues[channel]) * scales[channel] + 0.5).toInt())).toChar()
+        }
+
+        fun value(channel: Int, bin: Double): Double {
+            return if (scales[channel] == 0.0) minValues[channel] else minValues[channel] + bin / scales[channel]
+        }
+    }
+
+    private class Workspace(maxColumns: Int) {
+        val histogramMedian = HistogramMedian(maxColumns)
+        private var values = Array(3) { CharArray(0) }
+        private var samples = DoubleArray(0)
+        private var medians = FloatArray(0)
+
+        fun values(size: Int): Array<CharArray> {
+            if (values[0].size < size) {
+                values = Array(3) { CharArray(size) }
+            }
+            return values
+        }
+
+        fun samples(size: Int): DoubleArray {
+            if (samples.size < size) {
+                samples = DoubleArray(size)
+            }
+            return samples
+        }
+
+        fun medians(size: Int): FloatArray {
+            if (medians.size < size) {
+                medians = FloatArray(size)
+            }
+            return medians
+        }
+    }
+
+    companion object {
+        private const val STRIPE_WIDTH = 128
+        private const val BAND_HEIGHT = 64
+    }
+}
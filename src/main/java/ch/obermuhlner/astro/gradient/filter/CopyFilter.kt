@@ -4,19 +4,21 @@ import ch.obermuhlner.astro.image.DoubleImage
 import ch.obermuhlner.astro.image.color.ColorModel
 
 class CopyFilter constructor(private val model: ColorModel) : Filter {
+    override val support: Int
+        get() = 0
+
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val samples = DoubleArray(3)
+        val samples = DoubleArray(width * 3)
         for (dy in 0 until height) {
+            source.getRegion(0, dy, width, 1, model, samples)
             for (dx in 0 until width) {
-                if (source.isInside(dx, dy)) {
-                    source.getPixel(dx, dy, model, samples)
-                } else {
-                    samples[0] = 0.0
-                    samples[1] = 0.0
-                    samples[2] = 0.0
+                if (!source.isInside(dx, dy)) {
+                    samples[dx * 3 + 0] = 0.0
+                    samples[dx * 3 + 1] = 0.0
+                    samples[dx * 3 + 2] = 0.0
                 }
-                target.setPixel(dx, dy, model, samples)
             }
+            target.setRegion(0, dy, width, 1, model, samples)
         }
         return target
     }
@@ -1,10 +1,14 @@
 package ch.obermuhlner.astro.gradient.filter
 
-import ch.obermuhlner.astro.image.ArrayDoubleImage
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.FloatPlanarDoubleImage
 import kotlin.math.min
 
 open interface Filter {
+    // radius of the source neighbourhood that determines a target pixel, null if a target pixel depends on the whole image
+    val support: Int?
+        get() = null
+
     fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage
 
     fun filter(source: DoubleImage, target: DoubleImage): DoubleImage {
@@ -14,7 +18,7 @@ open interface Filter {
     }
 
     fun filter(source: DoubleImage): DoubleImage {
-        val target = ArrayDoubleImage(source.width, source.height, source.colorModel)
+        val target = FloatPlanarDoubleImage(source.width, source.height, source.colorModel)
         return filter(source, target)
     }
 
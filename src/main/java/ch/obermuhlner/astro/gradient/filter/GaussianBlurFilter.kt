@@ -1,190 +1,149 @@
 package ch.obermuhlner.astro.gradient.filter
 
-import ch.obermuhlner.astro.image.ArrayDoubleImage
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.ImageBufferPool
+import ch.obermuhlner.astro.image.Parallel
 import ch.obermuhlner.astro.image.color.ColorModel
+import ch.obermuhlner.astro.image.color.ColorUtil
 import kotlin.math.ceil
 import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
 import kotlin.math.roundToLong
 import kotlin.math.sqrt
 
 // http://blog.ivank.net/fastest-gaussian-blur.html
-class GaussianBlurFilter constructor(private val radius: Int, private val model: ColorModel) : Filter {
+class GaussianBlurFilter constructor(
+        private val radius: Int,
+        private val model: ColorModel,
+        private val bufferPool: ImageBufferPool = ImageBufferPool.shared) : StreamingFilter {
+    override val support: Int
+        get() = boxSizesForGauss(radius.toDouble(), 3).sumOf { boxRadius(it) }
+
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val temp = SwapImage(
-                ArrayDoubleImage(width, height, model),
-                ArrayDoubleImage(width, height, model)
-        )
-        temp.source.setPixels(source, model, null)
-        val boxSizes: DoubleArray = boxSizesForGauss(radius.toDouble(), 3)
-        for (boxSize: Double in boxSizes) {
-            val boxRadius: Int = (ceil((boxSize - 1) / 2) + 0.5).toInt()
-            boxBlur(temp.source, temp.target, width, height, boxRadius)
-            temp.swap()
+        val lock = Any()
+        val rows = RowSource { startY, rows, samples ->
+            synchronized(lock) {
+                source.getRegion(0, startY, width, rows, model, samples)
+            }
+        }
+        return filter(rows, model, target, width, height)
+    }
+
+    override fun filter(source: RowSource, sourceColorModel: ColorModel, target: DoubleImage, width: Int, height: Int): DoubleImage {
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+        if (width.toLong() * height > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image too large for array storage: $width x $height")
+        }
+
+        // planar float channels, blurred in place with one temporary per channel
+        bufferPool.useFloatArrays(6, width * height) { buffers ->
+            val channels = buffers.copyOfRange(0, 3)
+            val temp = buffers.copyOfRange(3, 6)
+
+            readChannels(source, sourceColorModel, channels, width, height)
+            val boxSizes: DoubleArray = boxSizesForGauss(radius.toDouble(), 3)
+            for (boxSize: Double in boxSizes) {
+                val boxRadius: Int = boxRadius(boxSize)
+                Parallel.forEachBand(height, ROW_BAND_HEIGHT) { startY, endY ->
+                    for (channel in 0 until 3) {
+                        boxBlurHorizontal(channels[channel], temp[channel], width, startY, endY, boxRadius)
+                    }
+                }
+                Parallel.forEachBand(width, COLUMN_BAND_WIDTH) { startX, endX ->
+                    val sums = DoubleArray(endX - startX)
+                    for (channel in 0 until 3) {
+                        boxBlurVertical(temp[channel], channels[channel], width, height, startX, endX, boxRadius, sums)
+                    }
+                }
+            }
+            writeChannels(channels, target, width, height)
         }
-        target.setPixels(temp.source, model, null)
         return target
     }
 
-    private class SwapImage(var source: DoubleImage, var target: DoubleImage) {
-        fun swap() {
-            val tmp: DoubleImage = source
-            source = target
-            target = tmp
+    private fun readChannels(source: RowSource, sourceColorModel: ColorModel, channels: Array<FloatArray>, width: Int, height: Int) {
+        Parallel.forEachBand(height, READ_BAND_HEIGHT) { startY, endY ->
+            val rows = endY - startY
+            val samples = DoubleArray(width * 3 * rows)
+            source.rows(startY, rows, samples)
+            ColorUtil.convert(sourceColorModel, samples, 0, model, samples, 0, width * rows)
+            var sampleIndex = 0
+            for (index in startY * width until (startY + rows) * width) {
+                channels[0][index] = samples[sampleIndex++].toFloat()
+                channels[1][index] = samples[sampleIndex++].toFloat()
+                channels[2][index] = samples[sampleIndex++].toFloat()
+            }
         }
     }
 
-    private fun boxBlur(source: DoubleImage, target: DoubleImage, width: Int, height: Int, boxRadius: Int) {
-        val tempImage = ArrayDoubleImage(width, height, model)
-        boxBlurHorizontal(source, tempImage, width, height, boxRadius)
-        boxBlurVertical(tempImage, target, width, height, boxRadius)
+    private fun writeChannels(channels: Array<FloatArray>, target: DoubleImage, width: Int, height: Int) {
+        val samples = DoubleArray(width * 3 * min(height, ROW_BAND_HEIGHT))
+        for (startY in 0 until height step ROW_BAND_HEIGHT) {
+            val rows = min(ROW_BAND_HEIGHT, height - startY)
+            var sampleIndex = 0
+            for (index in startY * width until (startY + rows) * width) {
+                samples[sampleIndex++] = channels[0][index].toDouble()
+                samples[sampleIndex++] = channels[1][index].toDouble()
+                samples[sampleIndex++] = channels[2][index].toDouble()
+            }
+            target.setRegion(0, startY, width, rows, model, samples)
+        }
     }
 
-    private fun boxBlurHorizontal(source: DoubleImage, target: DoubleImage, width: Int, height: Int, boxRadius: Int) {
+    private fun boxBlurHorizontal(source: FloatArray, target: FloatArray, width: Int, startY: Int, endY: Int, boxRadius: Int) {
         val kernelSize = boxRadius + boxRadius + 1
-        val color = DoubleArray(3)
 
-        for (y in 0 until height) {
-            source.getPixel(0, y, model, color)
-            val first0 = color[0]
-            val first1 = color[1]
-            val first2 = color[2]
-
-            source.getPixel(width - 1, y, model, color)
-            val last0 = color[0]
-            val last1 = color[1]
-            val last2 = color[2]
-
-            var leftX = 0
-            var rightX = boxRadius
-            var targetX = 0
-
-            var sum0 = first0 * (boxRadius + 1)
-            var sum1 = first1 * (boxRadius + 1)
-            var sum2 = first2 * (boxRadius + 1)
-            for (x in 0 until boxRadius) {
-                source.getPixel(x, y, model, color)
-                sum0 += color[0]
-                sum1 += color[1]
-                sum2 += color[2]
+        for (y in startY until endY) {
+            val rowIndex = y * width
+            var sum = 0.0
+            for (x in -boxRadius..boxRadius) {
+                sum += source[rowIndex + clamp(x, width)]
             }
-            for (x in 0..boxRadius) {
-                source.getPixel(rightX++, y, model, color)
-                sum0 += color[0] - first0
-                sum1 += color[1] - first1
-                sum2 += color[2] - first2
-
-                color[0] = sum0 / kernelSize
-                color[1] = sum1 / kernelSize
-                color[2] = sum2 / kernelSize
-                target.setPixel(targetX++, y, model, color)
-            }
-            for (x in boxRadius + 1 until width - boxRadius) {
-                source.getPixel(rightX++, y, model, color)
-                sum0 += color[0]
-                sum1 += color[1]
-                sum2 += color[2]
-
-                source.getPixel(leftX++, y, model, color)
-                sum0 -= color[0]
-                sum1 -= color[1]
-                sum2 -= color[2]
-
-                color[0] = sum0 / kernelSize
-                color[1] = sum1 / kernelSize
-                color[2] = sum2 / kernelSize
-                target.setPixel(targetX++, y, model, color)
-            }
-            for (x in width - boxRadius until width) {
-                sum0 += last0
-                sum1 += last1
-                sum2 += last2
-
-                source.getPixel(leftX++, y, model, color)
-                sum0 -= color[0]
-                sum1 -= color[1]
-                sum2 -= color[2]
-
-                color[0] = sum0 / kernelSize
-                color[1] = sum1 / kernelSize
-                color[2] = sum2 / kernelSize
-                target.setPixel(targetX++, y, model, color)
+            for (x in 0 until width) {
+                target[rowIndex + x] = (sum / kernelSize).toFloat()
+                sum += source[rowIndex + clamp(x + boxRadius + 1, width)] - source[rowIndex + clamp(x - boxRadius, width)].toDouble()
             }
         }
     }
 
-    private fun boxBlurVertical(source: DoubleImage, target: DoubleImage, width: Int, height: Int, boxRadius: Int) {
+    private fun boxBlurVertical(source: FloatArray, target: FloatArray, width: Int, height: Int, startX: Int, endX: Int, boxRadius: Int, sums: DoubleArray) {
         val kernelSize = boxRadius + boxRadius + 1
-        val samples = DoubleArray(3)
-
-        for (x in 0 until width) {
-            source.getPixel(x, 0, model, samples)
-            val first0: Double = samples[0]
-            val first1: Double = samples[1]
-            val first2: Double = samples[2]
-
-            source.getPixel(x, height - 1, model, samples)
-            val last0: Double = samples[0]
-            val last1: Double = samples[1]
-            val last2: Double = samples[2]
-
-            var leftY = 0
-            var rightY = boxRadius
-            var targetY = 0
-
-            var sum0 = first0 * (boxRadius + 1)
-            var sum1 = first1 * (boxRadius + 1)
-            var sum2 = first2 * (boxRadius + 1)
-            for (y in 0 until boxRadius) {
-                source.getPixel(x, y, model, samples)
-                sum0 += samples[0]
-                sum1 += samples[1]
-                sum2 += samples[2]
-            }
-            for (y in 0..boxRadius) {
-                source.getPixel(x, rightY++, model, samples)
-                sum0 += samples[0] - first0
-                sum1 += samples[1] - first1
-                sum2 += samples[2] - first2
-                samples[0] = sum0 / kernelSize
-                samples[1] = sum1 / kernelSize
-                samples[2] = sum2 / kernelSize
-                target.setPixel(x, targetY++, model, samples)
+        val bandWidth = endX - startX
+
+        sums.fill(0.0, 0, bandWidth)
+        for (y in -boxRadius..boxRadius) {
+            val addIndex = clamp(y, height) * width + startX
+            for (i in 0 until bandWidth) {
+                sums[i] += source[addIndex + i]
             }
-            for (y in boxRadius + 1 until height - boxRadius) {
-                source.getPixel(x, rightY++, model, samples)
-                sum0 += samples[0]
-                sum1 += samples[1]
-                sum2 += samples[2]
-
-                source.getPixel(x, leftY++, model, samples)
-                sum0 -= samples[0]
-                sum1 -= samples[1]
-                sum2 -= samples[2]
-
-                samples[0] = sum0 / kernelSize
-                samples[1] = sum1 / kernelSize
-                samples[2] = sum2 / kernelSize
-                target.setPixel(x, targetY++, model, samples)
+        }
+        for (y in 0 until height) {
+            val targetIndex = y * width + startX
+            for (i in 0 until bandWidth) {
+                target[targetIndex + i] = (sums[i] / kernelSize).toFloat()
             }
-            for (y in height - boxRadius until height) {
-                sum0 += last0
-                sum1 += last1
-                sum2 += last2
-
-                source.getPixel(x, leftY++, model, samples)
-                sum0 -= samples[0]
-                sum1 -= samples[1]
-                sum2 -= samples[2]
-
-                samples[0] = sum0 / kernelSize
-                samples[1] = sum1 / kernelSize
-                samples[2] = sum2 / kernelSize
-                target.setPixel(x, targetY++, model, samples)
+
+            if (y + 1 < height) {
+                val addIndex = clamp(y + boxRadius + 1, height) * width + startX
+                val removeIndex = clamp(y - boxRadius, height) * width + startX
+                for (i in 0 until bandWidth) {
+                    sums[i] += source[addIndex + i] - source[removeIndex + i].toDouble()
+                }
             }
         }
     }
 
+    private fun boxRadius(boxSize: Double): Int {
+        return (ceil((boxSize - 1) / 2) + 0.5).toInt()
+    }
+
+    private fun clamp(index: Int, size: Int): Int {
+        return max(0, min(size - 1, index))
+    }
+
     private fun boxSizesForGauss(sigma: Double, n: Int): DoubleArray {
         val wIdeal = sqrt((12 * sigma * sigma / n) + 1)
         var wl = floor(wIdeal)
@@ -202,4 +161,11 @@ class GaussianBlurFilter constructor(private val radius: Int, private val model:
     override fun toString(): String {
         return "GaussianBlur(radius=$radius)"
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val ROW_BAND_HEIGHT = 16
+        // larger than the row bands of the blur, so that a streamed source with a halo does not recalculate too many rows
+        private const val READ_BAND_HEIGHT = 64
+        private const val COLUMN_BAND_WIDTH = 256
+    }
+}
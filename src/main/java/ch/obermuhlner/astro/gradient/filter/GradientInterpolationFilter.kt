@@ -4,9 +4,14 @@ import ch.obermuhlner.astro.gradient.Point
 import ch.obermuhlner.astro.gradient.points.AllPointsFinder
 import ch.obermuhlner.astro.gradient.points.PointsFinder
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
 import ch.obermuhlner.astro.image.color.ColorModel.RGB
 import java.util.*
+import kotlin.math.abs
+import kotlin.math.max
+import kotlin.math.min
 import kotlin.math.pow
+import kotlin.math.sqrt
 
 class GradientInterpolationFilter : Filter {
     private var pointsFinder: PointsFinder = AllPointsFinder()
@@ -14,6 +19,12 @@ class GradientInterpolationFilter : Filter {
     private val adaptiveGradient: Boolean = false
     private val mapPointToColor: MutableMap<Point, DoubleArray> = HashMap()
 
+    // spacing of the lattice on which the gradient is calculated exactly, 1 calculates every pixel exactly
+    var gridSpacing: Int = 1
+
+    // the lattice spacing is reduced until the interpolation error is below this bound
+    var maxGridError: Double = DEFAULT_MAX_GRID_ERROR
+
     constructor()
 
     constructor(interpolationPower: Double) {
@@ -44,71 +55,281 @@ class GradientInterpolationFilter : Filter {
         pointsFinder.setFixPoints(fixPoints)
     }
 
-    private fun getRelevantFixPoints(point: Point): List<Point> {
-        return pointsFinder.getRelevantFixPoints(point)
+    override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val fixPoints = FixPoints(mapPointToColor)
+
+        var spacing = gridSpacing
+        while (spacing > 1) {
+            val grid = Grid(fixPoints, spacing, width, height)
+            if (grid.maxError() <= maxGridError) {
+                grid.render(target)
+                return target
+            }
+            spacing /= 2
+        }
+
+        Parallel.forEachBand(height, BAND_HEIGHT) { startY, endY ->
+            val evaluator = Evaluator(fixPoints)
+            val samples = DoubleArray(width * (endY - startY) * 3)
+            for (startX in 0 until width step TILE_WIDTH) {
+                val endX = min(width, startX + TILE_WIDTH)
+                evaluator.startRegion(startX, startY, endX - startX, endY - startY)
+                for (y in startY until endY) {
+                    var index = ((y - startY) * width + startX) * 3
+                    for (x in startX until endX) {
+                        evaluator.interpolate(x, y, samples, index)
+                        index += 3
+                    }
+                }
+            }
+            synchronized(target) {
+                target.setRegion(0, startY, width, endY - startY, RGB, samples)
+            }
+        }
+        return target
     }
 
-    private fun getRelevantFixColors(relevantFixPoints: List<Point>): List<DoubleArray> {
-        val result: MutableList<DoubleArray> = ArrayList()
-        for (relevantFixPoint: Point in relevantFixPoints) {
-            result.add(mapPointToColor[relevantFixPoint]!!)
+    // fix points stored as flat (x, y, r, g, b) values
+    private class FixPoints(mapPointToColor: Map<Point, DoubleArray>) {
+        val values = DoubleArray(mapPointToColor.size * FIX_POINT_SIZE)
+        val indices: MutableMap<Point, Int> = HashMap()
+
+        init {
+            var index = 0
+            for ((point, color) in mapPointToColor) {
+                indices[point] = index
+                values[index * FIX_POINT_SIZE] = point.x.toDouble()
+                values[index * FIX_POINT_SIZE + 1] = point.y.toDouble()
+                values[index * FIX_POINT_SIZE + 2] = color[RGB.R]
+                values[index * FIX_POINT_SIZE + 3] = color[RGB.G]
+                values[index * FIX_POINT_SIZE + 4] = color[RGB.B]
+                index++
+            }
         }
-        return result
     }
 
-    override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val sourceColor = DoubleArray(3)
-        val gradientColor = DoubleArray(3)
-        for (y in 0 until height) {
-            for (x in 0 until width) {
-                val point = Point(x, y)
-                val relevantFixPoints = getRelevantFixPoints(point)
-                val relevantFixColors = getRelevantFixColors(relevantFixPoints)
-                val n = relevantFixPoints.size
-                val distances = DoubleArray(n)
-                val factors = DoubleArray(n)
-                var totalDistance = 0.0
+    // Interpolates the gradient of single pixels - every thread needs its own evaluator.
+    // The relevant fix points are only looked up once per region if the points finder knows they are the same for the entire region,
+    // otherwise they are looked up per pixel and only mapped to fix point indices again when they change.
+    private inner class Evaluator(private val fixPoints: FixPoints) {
+        private var regionFixPoints = false
+        private var relevantPoints: Array<Point?> = arrayOfNulls(0)
+        private var relevantIndices = IntArray(0)
+        private var relevantCount = 0
+        private var factors = DoubleArray(0)
+
+        fun startRegion(x: Int, y: Int, width: Int, height: Int) {
+            val points = pointsFinder.getRelevantFixPoints(x, y, width, height)
+            regionFixPoints = points != null
+            if (points != null) {
+                setRelevantFixPoints(points)
+            }
+        }
+
+        fun interpolate(x: Int, y: Int, gradientColor: DoubleArray, offset: Int) {
+            if (!regionFixPoints) {
+                setRelevantFixPoints(pointsFinder.getRelevantFixPoints(Point(x, y)))
+            }
+
+            val values = fixPoints.values
+            val n = relevantCount
+            var totalDistance = 0.0
+            for (i in 0 until n) {
+                val index = relevantIndices[i] * FIX_POINT_SIZE
+                val dx = values[index] - x
+                val dy = values[index + 1] - y
+                val distance = sqrt(dx * dx + dy * dy)
+                factors[i] = distance
+                totalDistance += distance
+            }
+            var totalFactor = 0.0
+            for (i in 0 until n) {
+                val factor = (1.0 - factors[i] / totalDistance).pow(interpolationPower)
+                factors[i] = factor
+                totalFactor += factor
+            }
+            if (n == 1) {
+                factors[0] = 1.0
+                totalFactor = 1.0
+            }
+            var r = 0.0
+            var g = 0.0
+            var b = 0.0
+            for (i in 0 until n) {
+                val index = relevantIndices[i] * FIX_POINT_SIZE
+                val factor = factors[i] / totalFactor
+                r += values[index + 2] * factor
+                g += values[index + 3] * factor
+                b += values[index + 4] * factor
+            }
+            gradientColor[offset + RGB.R] = r
+            gradientColor[offset + RGB.G] = g
+            gradientColor[offset + RGB.B] = b
+        }
+
+        private fun setRelevantFixPoints(points: List<Point>) {
+            val n = points.size
+            if (n == relevantCount) {
+                var same = true
                 for (i in 0 until n) {
-                    val gradientPoint = relevantFixPoints[i]
-                    distances[i] = point.distance(gradientPoint)
-                    totalDistance += distances[i]
+                    if (points[i] !== relevantPoints[i]) {
+                        same = false
+                        break
+                    }
                 }
-                var totalFactor = 0.0
-                for (i in 0 until n) {
-                    var factor = 1.0 - distances[i] / totalDistance
-                    factor = factor.pow(interpolationPower)
-                    factors[i] = factor
-                    totalFactor += factor
+                if (same) {
+                    return
                 }
-                if (n == 1) {
-                    factors[0] = 1.0
-                    totalFactor = 1.0
+            }
+
+            if (relevantPoints.size < n) {
+                relevantPoints = arrayOfNulls(n)
+                relevantIndices = IntArray(n)
+                factors = DoubleArray(n)
+            }
+            for (i in 0 until n) {
+                relevantPoints[i] = points[i]
+                relevantIndices[i] = fixPoints.indices[points[i]]!!
+            }
+            relevantCount = n
+        }
+    }
+
+    // Gradient calculated exactly on a lattice with the specified spacing and bicubically (Catmull-Rom) interpolated in between.
+    // The lattice extends one node before and two nodes after the image, so that every pixel has 4 x 4 surrounding nodes.
+    private inner class Grid(private val fixPoints: FixPoints, private val spacing: Int, private val width: Int, private val height: Int) {
+        private val gridWidth = (width - 1 + spacing - 1) / spacing + 4
+        private val gridHeight = (height - 1 + spacing - 1) / spacing + 4
+        private val nodes = DoubleArray(gridWidth * gridHeight * 3)
+
+        init {
+            Parallel.forEachBand(gridHeight, 1) { j, _ ->
+                val evaluator = Evaluator(fixPoints)
+                evaluator.startRegion(-spacing, (j - 1) * spacing, gridWidth * spacing, 1)
+                for (i in 0 until gridWidth) {
+                    evaluator.interpolate((i - 1) * spacing, (j - 1) * spacing, nodes, (i + j * gridWidth) * 3)
                 }
-                gradientColor[RGB.R] = 0.0
-                gradientColor[RGB.G] = 0.0
-                gradientColor[RGB.B] = 0.0
-                for (i in 0 until n) {
-                    val factor: Double = factors[i] / totalFactor
-                    val fixColor: DoubleArray = relevantFixColors[i]
-                    gradientColor[RGB.R] += fixColor[RGB.R] * factor
-                    gradientColor[RGB.G] += fixColor[RGB.G] * factor
-                    gradientColor[RGB.B] += fixColor[RGB.B] * factor
+            }
+        }
+
+        // Compares the exact gradient with the interpolated gradient in the center and at the edge midpoints of every grid cell
+        // (the corners are the exactly calculated nodes).
+        // The error is only probed at these points, so the bound is approximate: between the probes it can be slightly larger,
+        // and for points finders with discontinuities (e.g. Voronoi or Nearest) a discontinuity between the probes can exceed it by far.
+        fun maxError(): Double {
+            val half = spacing / 2
+            val cellRows = (height + spacing - 1) / spacing
+            val rowErrors = DoubleArray(cellRows * 2)
+            Parallel.forEachBand(rowErrors.size, 1) { row, _ ->
+                // even rows run along the cell edges, odd rows through the cell centers
+                val edgeRow = row % 2 == 0
+                val y = (row / 2) * spacing + if (edgeRow) 0 else half
+                if (y >= height) {
+                    return@forEachBand
                 }
-                source.getPixel(x, y, RGB, sourceColor)
-                if (adaptiveGradient) {
-//          HSVColor imageHSV = HSVColor.fromRGB(inputColor);
-//          HSVColor gradientHSV = HSVColor.fromRGB(gradientColor);
-//          double v = (imageHSV.v + gradientHSV.v) / 2;
-//          gradientHSV = new HSVColor(gradientHSV.h, gradientHSV.s, v);
-//          gradientColor = RGBColor.fromHSV(gradientHSV);
+                val evaluator = Evaluator(fixPoints)
+                evaluator.startRegion(0, y, width, 1)
+                val exactColor = DoubleArray(3)
+                val gridColor = DoubleArray(3)
+                var maxError = 0.0
+                fun probe(x: Int) {
+                    if (x < width) {
+                        evaluator.interpolate(x, y, exactColor, 0)
+                        sample(x, y, gridColor)
+                        for (channel in 0 until 3) {
+                            maxError = max(maxError, abs(exactColor[channel] - gridColor[channel]))
+                        }
+                    }
                 }
-                target.setPixel(x, y, RGB, gradientColor)
+                for (cellX in 0 until width step spacing) {
+                    if (!edgeRow) {
+                        probe(cellX)
+                    }
+                    probe(cellX + half)
+                }
+                rowErrors[row] = maxError
             }
+            return rowErrors.maxOrNull() ?: 0.0
+        }
+
+        fun render(target: DoubleImage) {
+            val weightsX = DoubleArray(width * 4)
+            for (x in 0 until width) {
+                cubicWeights((x % spacing).toDouble() / spacing, weightsX, x * 4)
+            }
+            Parallel.forEachBand(height, BAND_HEIGHT) { startY, endY ->
+                val weightsY = DoubleArray(4)
+                val columns = DoubleArray(gridWidth * 3)
+                val samples = DoubleArray(width * (endY - startY) * 3)
+                var index = 0
+                for (y in startY until endY) {
+                    cubicWeights((y % spacing).toDouble() / spacing, weightsY, 0)
+                    interpolateRows(y / spacing, weightsY, 0, columns)
+                    for (x in 0 until width) {
+                        interpolateColumns(x / spacing, weightsX, x * 4, columns, samples, index)
+                        index += 3
+                    }
+                }
+                synchronized(target) {
+                    target.setRegion(0, startY, width, endY - startY, RGB, samples)
+                }
+            }
+        }
+
+        fun sample(x: Int, y: Int, color: DoubleArray) {
+            val weightsX = DoubleArray(4)
+            val weightsY = DoubleArray(4)
+            cubicWeights((x % spacing).toDouble() / spacing, weightsX, 0)
+            cubicWeights((y % spacing).toDouble() / spacing, weightsY, 0)
+            val columns = DoubleArray(gridWidth * 3)
+            interpolateRows(y / spacing, weightsY, 0, columns)
+            interpolateColumns(x / spacing, weightsX, 0, columns, color, 0)
+        }
+
+        // interpolates the 4 grid rows around cell row j into a single row of grid columns
+        private fun interpolateRows(j: Int, weights: DoubleArray, weightsOffset: Int, columns: DoubleArray) {
+            for (index in 0 until gridWidth * 3) {
+                var value = 0.0
+                for (k in 0 until 4) {
+                    value += weights[weightsOffset + k] * nodes[(j + k) * gridWidth * 3 + index]
+                }
+                columns[index] = value
+            }
+        }
+
+        private fun interpolateColumns(i: Int, weights: DoubleArray, weightsOffset: Int, columns: DoubleArray, color: DoubleArray, colorOffset: Int) {
+            for (channel in 0 until 3) {
+                var value = 0.0
+                for (k in 0 until 4) {
+                    value += weights[weightsOffset + k] * columns[(i + k) * 3 + channel]
+                }
+                color[colorOffset + channel] = value
+            }
+        }
+
+        private fun cubicWeights(t: Double, weights: DoubleArray, offset: Int) {
+            val t2 = t * t
+            val t3 = t2 * t
+            weights[offset] = (-t3 + 2 * t2 - t) / 2
+            weights[offset + 1] = (3 * t3 - 5 * t2 + 2) / 2
+            weights[offset + 2] = (-3 * t3 + 4 * t2 + t) / 2
+            weights[offset + 3] = (t3 - t2) / 2
         }
-        return target
     }
 
     override fun toString(): String {
         return "Gradient{pointsFinder=$pointsFinder, interpolationPower=$interpolationPower, adaptiveGradient=$adaptiveGradient, mapPointToColor=$mapPointToColor}"
     }
-}
\ No newline at end of file
+
+    companion object {
+        const val DEFAULT_MAX_GRID_ERROR = 1.0 / 4096
+
+        private const val FIX_POINT_SIZE = 5
+        private const val BAND_HEIGHT = 16
+        private const val TILE_WIDTH = 16
+    }
+}
@@ -0,0 +1,155 @@
+package ch.obermuhlner.astro.gradient.filter
+
+import kotlin.math.max
+import kotlin.math.min
+
+// Constant time 2D median of a single 16 bit quantized channel (Perreault and Hébert).
+// Every column keeps a histogram of the window rows, the kernel histogram is updated by adding and removing
+// whole column histograms and its fine level is only brought up to date for the coarse bins that are visited.
+internal class HistogramMedian(private val maxColumns: Int) {
+    private val columnCoarse = IntArray(maxColumns * COARSE_BINS)
+    private val columnFine = ShortArray(maxColumns * BINS)
+    private val kernelCoarse = IntArray(COARSE_BINS)
+    private val kernelFine = IntArray(BINS)
+    private val kernelFineX = IntArray(COARSE_BINS)
+
+    // values contain regionWidth x regionHeight quantized samples (0 until BINS),
+    // the median bin is written for the output rectangle (in region coordinates) into target[targetOffset + pixelIndex * targetStride],
+    // for an even number of pixels the two middle bins are averaged or, for circular channels like hue, the upper one is taken
+    fun filter(values: CharArray, regionWidth: Int, regionHeight: Int, radius: Int,
+               outputX: Int, outputY: Int, outputWidth: Int, outputHeight: Int,
+               target: FloatArray, targetOffset: Int, targetStride: Int, averageEven: Boolean = true) {
+        if (regionWidth > maxColumns) {
+            throw IllegalArgumentException("Region too wide: $regionWidth > $maxColumns")
+        }
+        if (radius > MAX_RADIUS) {
+            throw IllegalArgumentException("Radius too large: $radius > $MAX_RADIUS")
+        }
+
+        for (y in max(0, outputY - radius - 1) until min(regionHeight, outputY + radius)) {
+            addRow(values, y, regionWidth, 1)
+        }
+
+        for (outY in 0 until outputHeight) {
+            val y = outputY + outY
+            if (y - radius - 1 >= 0) {
+                addRow(values, y - radius - 1, regionWidth, -1)
+            }
+            if (y + radius < regionHeight) {
+                addRow(values, y + radius, regionWidth, 1)
+            }
+            val rowCount = min(regionHeight - 1, y + radius) - max(0, y - radius) + 1
+
+            kernelCoarse.fill(0)
+            kernelFineX.fill(NONE)
+            for (x in max(0, outputX - radius - 1) until min(regionWidth, outputX + radius)) {
+                addColumnCoarse(x, 1)
+            }
+
+            for (outX in 0 until outputWidth) {
+                val x = outputX + outX
+                if (x - radius - 1 >= 0 && x + radius < regionWidth) {
+                    moveColumnCoarse(x - radius - 1, x + radius)
+                } else if (x - radius - 1 >= 0) {
+                    addColumnCoarse(x - radius - 1, -1)
+                } else if (x + radius < regionWidth) {
+                    addColumnCoarse(x + radius, 1)
+                }
+                val columnCount = min(regionWidth - 1, x + radius) - max(0, x - radius) + 1
+
+                val n = rowCount * columnCount
+                target[targetOffset + ((outY * outputWidth) + outX) * targetStride] = if (n % 2 == 1 || !averageEven) {
+                    select(n / 2, x, regionWidth, radius).toFloat()
+                } else {
+                    (select(n / 2 - 1, x, regionWidth, radius) + select(n / 2, x, regionWidth, radius)) / 2.0f
+                }
+            }
+        }
+
+        // remove the remaining rows so that the column histograms are empty for the next call
+        val lastY = outputY + outputHeight - 1
+        for (y in max(0, lastY - radius) until min(regionHeight, lastY + radius + 1)) {
+            addRow(values, y, regionWidth, -1)
+        }
+    }
+
+    private fun addRow(values: CharArray, y: Int, regionWidth: Int, delta: Int) {
+        var index = y * regionWidth
+        for (x in 0 until regionWidth) {
+            val value = values[index++].toInt()
+            columnCoarse[x * COARSE_BINS + (value ushr FINE_BITS)] += delta
+            val fineIndex = x * BINS + value
+            columnFine[fineIndex] = (columnFine[fineIndex] + delta).toShort()
+        }
+    }
+
+    private fun addColumnCoarse(x: Int, delta: Int) {
+        val offset = x * COARSE_BINS
+        for (bin in 0 until COARSE_BINS) {
+            kernelCoarse[bin] += delta * columnCoarse[offset + bin]
+        }
+    }
+
+    private fun moveColumnCoarse(removeX: Int, addX: Int) {
+        val removeOffset = removeX * COARSE_BINS
+        val addOffset = addX * COARSE_BINS
+        for (bin in 0 until COARSE_BINS) {
+            kernelCoarse[bin] += columnCoarse[addOffset + bin] - columnCoarse[removeOffset + bin]
+        }
+    }
+
+    private fun addColumnFine(x: Int, coarseBin: Int, delta: Int) {
+        val kernelOffset = coarseBin * FINE_BINS
+        val columnOffset = x * BINS + kernelOffset
+        for (bin in 0 until FINE_BINS) {
+            kernelFine[kernelOffset + bin] += delta * (columnFine[columnOffset + bin].toInt() and 0xffff)
+        }
+    }
+
+    private fun updateFine(coarseBin: Int, x: Int, regionWidth: Int, radius: Int) {
+        val lastX = kernelFineX[coarseBin]
+        if (lastX == NONE || x - lastX > radius) {
+            kernelFine.fill(0, coarseBin * FINE_BINS, (coarseBin + 1) * FINE_BINS)
+            for (xx in max(0, x - radius)..min(regionWidth - 1, x + radius)) {
+                addColumnFine(xx, coarseBin, 1)
+            }
+        } else {
+            for (xx in lastX + 1..x) {
+                if (xx - radius - 1 >= 0) {
+                    addColumnFine(xx - radius - 1, coarseBin, -1)
+                }
+                if (xx + radius < regionWidth) {
+                    addColumnFine(xx + radius, coarseBin, 1)
+                }
+            }
+        }
+        kernelFineX[coarseBin] = x
+    }
+
+    // returns the quantized value of the k-th (0-based) element in the kernel
+    private fun select(k: Int, x: Int, regionWidth: Int, radius: Int): Int {
+        var count = 0
+        var coarseBin = 0
+        while (count + kernelCoarse[coarseBin] <= k) {
+            count += kernelCoarse[coarseBin]
+            coarseBin++
+        }
+        updateFine(coarseBin, x, regionWidth, radius)
+        var bin = coarseBin * FINE_BINS
+        while (count + kernelFine[bin] <= k) {
+            count += kernelFine[bin]
+            bin++
+        }
+        return bin
+    }
+
+    companion object {
+        const val BINS = 1 shl 16
+
+        private const val FINE_BITS = 8
+        private const val FINE_BINS = 1 shl FINE_BITS
+        private const val COARSE_BINS = BINS / FINE_BINS
+        private const val NONE = Int.MIN_VALUE
+        private const val MAX_RADIUS = 32767
+    }
+}
@@ -1,26 +1,38 @@
 package ch.obermuhlner.astro.gradient.filter
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
 import ch.obermuhlner.astro.image.color.ColorModel
-import java.util.*
 
 class HorizontalMedianFilter constructor(private val radius: Int, private val model: ColorModel) : Filter {
+    override val support: Int
+        get() = radius
+
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val data: Array<DoubleArray> = Array(width) { DoubleArray(3) }
-        for (y in 0 until height) {
-            for (x in 0 until width) {
-                var n = 0
-                for (dx in -radius..radius) {
-                    val xx: Int = x + dx
-                    if (source.isValidPixel(xx, y)) {
-                        source.getPixel(xx, y, model, data[n++])
-                    }
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val lineLength = width + radius + radius
+        val lock = Any()
+        Parallel.forEachBand(height, BAND_HEIGHT) { startY, endY ->
+            val rows = endY - startY
+            val samples = DoubleArray(lineLength * rows * 3)
+            val valid = BooleanArray(lineLength * rows)
+            val medians = DoubleArray(width * rows * 3)
+            val slidingMedian = SlidingMedian(lineLength)
+
+            synchronized(lock) {
+                source.getRegion(-radius, startY, lineLength, rows, model, samples)
+            }
+            for (row in 0 until rows) {
+                for (i in 0 until lineLength) {
+                    valid[row * lineLength + i] = source.isValidPixel(i - radius, startY + row)
                 }
-                Arrays.sort(data, 0, n,
-                        Comparator.comparingDouble { c: DoubleArray -> c[2] }
-                        .thenComparing { c: DoubleArray -> c[1] }
-                        .thenComparing { c: DoubleArray -> c[0] })
-                target.setPixel(x, y, model, data[n / 2])
+                slidingMedian.filter(samples, valid, row * lineLength, 1, lineLength, radius, medians, row * width, 1)
+            }
+            synchronized(lock) {
+                target.setRegion(0, startY, width, rows, model, medians)
             }
         }
         return target
@@ -29,4 +41,8 @@ class HorizontalMedianFilter constructor(private val radius: Int, private val mo
     override fun toString(): String {
         return "HorizontalMedianFilter(radius=$radius)"
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val BAND_HEIGHT = 16
+    }
+}
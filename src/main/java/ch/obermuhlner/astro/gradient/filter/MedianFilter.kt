@@ -1,16 +1,306 @@
 package ch.obermuhlner.astro.gradient.filter
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
 import ch.obermuhlner.astro.image.color.ColorModel
+import java.util.Arrays
+import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.math.max
+import kotlin.math.min
 
-class MedianFilter(private val radius: Int) : AbstractFilter() {
-    override fun filterPixel(source: DoubleImage, x: Int, y: Int, colorModel: ColorModel, color: DoubleArray): DoubleArray {
-        val size: Int = radius + radius + 1
-        source.medianPixel(x - radius, y - radius, size, size, colorModel, color)
-        return color
+// Median pixel of the window, ordered by value, then saturation, then hue (the same as DoubleImage.medianPixel),
+// so that the result is one of the window pixels. For an even number of pixels (at the border) the same two pixels
+// as in medianPixel are averaged.
+// The image is processed in full height column stripes: the pixels of a stripe (including its halo) are ranked once
+// and the window is moved along a serpentine path over a Fenwick tree of the ranks in the window.
+// See ChannelMedianFilter for the constant time median of the individual channels.
+class MedianFilter(private val radius: Int) : Filter {
+    override val support: Int
+        get() = radius
+
+    override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val lock = Any()
+        // the stripe buffers are only kept for the duration of this call
+        val workspaces = ConcurrentLinkedQueue<Workspace>()
+        Parallel.forEachBand(width, STRIPE_WIDTH) { startX, endX ->
+            val workspace = workspaces.poll() ?: Workspace()
+            try {
+                filterStripe(source, target, startX, endX, height, workspace, lock)
+            } finally {
+                workspaces.add(workspace)
+            }
+        }
+        return target
+    }
+
+    private fun filterStripe(source: DoubleImage, target: DoubleImage, startX: Int, endX: Int, height: Int, workspace: Workspace, lock: Any) {
+        val regionX = max(0, startX - radius)
+        val regionWidth = min(source.width, endX + radius) - regionX
+        val regionHeight = min(source.height, height + radius)
+        val n = regionWidth * regionHeight
+        val stripeWidth = endX - startX
+
+        val samples = workspace.samples(n * 3)
+        synchronized(lock) {
+            source.getRegion(regionX, 0, regionWidth, regionHeight, ColorModel.HSV, samples)
+        }
+        val ranks = workspace.ranks(n)
+        val rankCount = rankPixels(samples, n, ranks, workspace)
+        val rankPixels = workspace.rankPixels(rankCount)
+        for (i in 0 until n) {
+            rankPixels[ranks[i]] = i
+        }
+
+        val window = Window(ranks, regionWidth, rankCount, workspace.tree(rankCount + 1))
+        val output = workspace.output(stripeWidth * BAND_HEIGHT * 3)
+        for (bandY in 0 until height step BAND_HEIGHT) {
+            val bandHeight = min(BAND_HEIGHT, height - bandY)
+            for (y in bandY until bandY + bandHeight) {
+                val y0 = max(0, y - radius)
+                val y1 = min(regionHeight - 1, y + radius)
+                for (i in 0 until stripeWidth) {
+                    // serpentine path, so that the window only moves by one row or column
+                    val outX = if (y % 2 == 0) i else stripeWidth - 1 - i
+                    val x = startX + outX - regionX
+                    window.moveTo(max(0, x - radius), min(regionWidth - 1, x + radius), y0, y1)
+
+                    val count = window.count()
+                    val index = ((y - bandY) * stripeWidth + outX) * 3
+                    val pixel = rankPixels[window.select(count / 2)] * 3
+                    if (count % 2 == 1) {
+                        System.arraycopy(samples, pixel, output, index, 3)
+                    } else {
+                        val upperPixel = rankPixels[window.select(min(count - 1, count / 2 + 1))] * 3
+                        for (channel in 0 until 3) {
+                            output[index + channel] = (samples[pixel + channel] + samples[upperPixel + channel]) / 2
+                        }
+                    }
+                }
+            }
+            synchronized(lock) {
+                target.setRegion(startX, bandY, stripeWidth, bandHeight, ColorModel.HSV, output)
+            }
+        }
+    }
+
+    // ranks the pixels by value, then saturation, then hue (equal pixels have equal ranks) and returns the number of ranks
+    private fun rankPixels(samples: DoubleArray, n: Int, ranks: IntArray, workspace: Workspace): Int {
+        val channelRanks = workspace.channelRanks(n)
+        val keys = workspace.keys(n)
+
+        denseRanks(samples, ColorModel.HSV.S, n, channelRanks, workspace)
+        denseRanks(samples, ColorModel.HSV.H, n, ranks, workspace)
+        for (i in 0 until n) {
+            keys[i] = (channelRanks[i].toLong() shl 32) or ranks[i].toLong()
+        }
+        denseRanks(keys, n, ranks, workspace)
+
+        denseRanks(samples, ColorModel.HSV.V, n, channelRanks, workspace)
+        for (i in 0 until n) {
+            keys[i] = (channelRanks[i].toLong() shl 32) or ranks[i].toLong()
+        }
+        return denseRanks(keys, n, ranks, workspace)
+    }
+
+    // the order of Double.compare(), like the comparator of medianPixel
+    private fun denseRanks(samples: DoubleArray, channel: Int, n: Int, ranks: IntArray, workspace: Workspace): Int {
+        val sorted = workspace.sortedValues(n)
+        for (i in 0 until n) {
+            sorted[i] = samples[i * 3 + channel]
+        }
+        Arrays.sort(sorted, 0, n)
+        var distinct = 0
+        for (i in 0 until n) {
+            if (distinct == 0 || java.lang.Double.compare(sorted[i], sorted[distinct - 1]) != 0) {
+                sorted[distinct++] = sorted[i]
+            }
+        }
+        for (i in 0 until n) {
+            ranks[i] = Arrays.binarySearch(sorted, 0, distinct, samples[i * 3 + channel])
+        }
+        return distinct
+    }
+
+    private fun denseRanks(keys: LongArray, n: Int, ranks: IntArray, workspace: Workspace): Int {
+        val sorted = workspace.sortedKeys(n)
+        System.arraycopy(keys, 0, sorted, 0, n)
+        Arrays.sort(sorted, 0, n)
+        var distinct = 0
+        for (i in 0 until n) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i]
+            }
+        }
+        for (i in 0 until n) {
+            ranks[i] = Arrays.binarySearch(sorted, 0, distinct, keys[i])
+        }
+        return distinct
     }
 
     override fun toString(): String {
         return "MedianFilter(radius=$radius)"
     }
-}
\ No newline at end of file
+
+    // the ranks of the pixels in a rectangle of the region, counted in a Fenwick tree
+    private class Window(private val ranks: IntArray, private val regionWidth: Int, private val rankCount: Int, private val tree: IntArray) {
+        private val highestBit = Integer.highestOneBit(rankCount)
+        private var x0 = 0
+        private var x1 = -1
+        private var y0 = 0
+        private var y1 = -1
+
+        init {
+            tree.fill(0, 0, rankCount + 1)
+        }
+
+        fun count(): Int = (x1 - x0 + 1) * (y1 - y0 + 1)
+
+        fun moveTo(newX0: Int, newX1: Int, newY0: Int, newY1: Int) {
+            // rows first (in the old columns), then columns (in the new rows)
+            for (y in y0..y1) {
+                if (y < newY0 || y > newY1) {
+                    addRow(y, x0, x1, -1)
+                }
+            }
+            for (y in newY0..newY1) {
+                if (y < y0 || y > y1) {
+                    addRow(y, x0, x1, 1)
+                }
+            }
+            y0 = newY0
+            y1 = newY1
+            for (x in x0..x1) {
+                if (x < newX0 || x > newX1) {
+                    addColumn(x, -1)
+                }
+            }
+            for (x in newX0..newX1) {
+                if (x < x0 || x > x1) {
+                    addColumn(x, 1)
+                }
+            }
+            x0 = newX0
+            x1 = newX1
+        }
+
+        // returns the k-th (0-based) smallest rank in the window
+        fun select(k: Int): Int {
+            var position = 0
+            var remaining = k
+            var bit = highestBit
+            while (bit > 0) {
+                val next = position + bit
+                if (next <= rankCount && tree[next] <= remaining) {
+                    position = next
+                    remaining -= tree[next]
+                }
+                bit = bit ushr 1
+            }
+            return position
+        }
+
+        private fun addRow(y: Int, fromX: Int, toX: Int, delta: Int) {
+            for (x in fromX..toX) {
+                add(ranks[y * regionWidth + x], delta)
+            }
+        }
+
+        private fun addColumn(x: Int, delta: Int) {
+            for (y in y0..y1) {
+                add(ranks[y * regionWidth + x], delta)
+            }
+        }
+
+        private fun add(rank: Int, delta: Int) {
+            var i = rank + 1
+            while (i <= rankCount) {
+                tree[i] += delta
+                i += i and -i
+            }
+        }
+    }
+
+    private class Workspace {
+        private var samples = DoubleArray(0)
+        private var sortedValues = DoubleArray(0)
+        private var keys = LongArray(0)
+        private var sortedKeys = LongArray(0)
+        private var ranks = IntArray(0)
+        private var channelRanks = IntArray(0)
+        private var rankPixels = IntArray(0)
+        private var tree = IntArray(0)
+        private var output = DoubleArray(0)
+
+        fun samples(size: Int): DoubleArray {
+            if (samples.size < size) {
+                samples = DoubleArray(size)
+            }
+            return samples
+        }
+
+        fun sortedValues(size: Int): DoubleArray {
+            if (sortedValues.size < size) {
+                sortedValues = DoubleArray(size)
+            }
+            return sortedValues
+        }
+
+        fun keys(size: Int): LongArray {
+            if (keys.size < size) {
+                keys = LongArray(size)
+            }
+            return keys
+        }
+
+        fun sortedKeys(size: Int): LongArray {
+            if (sortedKeys.size < size) {
+                sortedKeys = LongArray(size)
+            }
+            return sortedKeys
+        }
+
+        fun ranks(size: Int): IntArray {
+            if (ranks.size < size) {
+                ranks = IntArray(size)
+            }
+            return ranks
+        }
+
+        fun channelRanks(size: Int): IntArray {
+            if (channelRanks.size < size) {
+                channelRanks = IntArray(size)
+            }
+            return channelRanks
+        }
+
+        fun rankPixels(size: Int): IntArray {
+            if (rankPixels.size < size) {
+                rankPixels = IntArray(size)
+            }
+            return rankPixels
+        }
+
+        fun tree(size: Int): IntArray {
+            if (tree.size < size) {
+                tree = IntArray(size)
+            }
+            return tree
+        }
+
+        fun output(size: Int): DoubleArray {
+            if (output.size < size) {
+                output = DoubleArray(size)
+            }
+            return output
+        }
+    }
+
+    companion object {
+        private const val STRIPE_WIDTH = 128
+        private const val BAND_HEIGHT = 64
+    }
+}
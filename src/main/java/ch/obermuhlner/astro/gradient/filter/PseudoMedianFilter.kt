@@ -1,15 +1,18 @@
 package ch.obermuhlner.astro.gradient.filter
 
-import ch.obermuhlner.astro.image.ArrayDoubleImage
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.FloatPlanarDoubleImage
 import ch.obermuhlner.astro.image.color.ColorModel
 
 class PseudoMedianFilter constructor(private val radius: Int, model: ColorModel) : Filter {
     private val horizontalMedianFilter: HorizontalMedianFilter = HorizontalMedianFilter(radius, model)
     private val verticalMedianFilter: VerticalMedianFilter = VerticalMedianFilter(radius, model)
 
+    override val support: Int
+        get() = radius
+
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val temp = ArrayDoubleImage(width, height, target.colorModel)
+        val temp = FloatPlanarDoubleImage(width, height, target.colorModel)
         horizontalMedianFilter.filter(source, temp, width, height)
         verticalMedianFilter.filter(temp, target, width, height)
         return target
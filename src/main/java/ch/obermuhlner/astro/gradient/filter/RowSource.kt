@@ -0,0 +1,7 @@
+package ch.obermuhlner.astro.gradient.filter
+
+// Rows of an image that does not necessarily exist as a whole image (see StreamingFilter).
+fun interface RowSource {
+    // fills the samples of the full width rows startY until startY + rows, may be called concurrently for different rows
+    fun rows(startY: Int, rows: Int, samples: DoubleArray)
+}
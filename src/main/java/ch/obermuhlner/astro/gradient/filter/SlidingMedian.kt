@@ -0,0 +1,127 @@
+package ch.obermuhlner.astro.gradient.filter
+
+import kotlin.math.min
+
+// Sliding window median over a line of color samples ordered by sample 2, then sample 1, then sample 0.
+// Every sample of a line is ranked once by sorting, then the window is kept as a histogram over the ranks
+// (a Fenwick tree), so that adding, removing and selecting the median costs O(log n) independent of the radius.
+internal class SlidingMedian(maxLength: Int) {
+    private val indices = IntArray(maxLength)
+    private val mergeIndices = IntArray(maxLength)
+    private val ranks = IntArray(maxLength)
+    private val histogram = IntArray(maxLength + 1)
+
+    // line element i is stored at samples[(offset + i * stride) * 3] with validity valid[offset + i * stride],
+    // the median of elements [i, i + 2 * radius] is written to target[(targetOffset + i * targetStride) * 3]
+    fun filter(samples: DoubleArray, valid: BooleanArray, offset: Int, stride: Int, length: Int, radius: Int, target: DoubleArray, targetOffset: Int, targetStride: Int) {
+        val windowSize = radius + radius + 1
+
+        var validCount = 0
+        for (i in 0 until length) {
+            if (valid[offset + i * stride]) {
+                indices[validCount++] = i
+            }
+        }
+        sort(samples, offset, stride, validCount)
+        for (rank in 0 until validCount) {
+            ranks[indices[rank]] = rank
+        }
+        histogram.fill(0, 0, validCount + 1)
+
+        var count = 0
+        for (i in 0 until windowSize - 1) {
+            if (valid[offset + i * stride]) {
+                add(ranks[i], validCount, 1)
+                count++
+            }
+        }
+        for (i in 0..length - windowSize) {
+            val last = i + windowSize - 1
+            if (valid[offset + last * stride]) {
+                add(ranks[last], validCount, 1)
+                count++
+            }
+
+            val medianIndex = if (count > 0) indices[select(count / 2, validCount)] else i + radius
+            System.arraycopy(samples, (offset + medianIndex * stride) * 3, target, (targetOffset + i * targetStride) * 3, 3)
+
+            if (valid[offset + i * stride]) {
+                add(ranks[i], validCount, -1)
+                count--
+            }
+        }
+    }
+
+    private fun add(rank: Int, size: Int, delta: Int) {
+        var index = rank + 1
+        while (index <= size) {
+            histogram[index] += delta
+            index += index and -index
+        }
+    }
+
+    // returns the rank of the k-th (0-based) element in the histogram
+    private fun select(k: Int, size: Int): Int {
+        var position = 0
+        var remaining = k + 1
+        var step = Integer.highestOneBit(size)
+        while (step > 0) {
+            val next = position + step
+            if (next <= size && histogram[next] < remaining) {
+                position = next
+                remaining -= histogram[next]
+            }
+            step = step ushr 1
+        }
+        return position
+    }
+
+    // stable bottom-up merge sort of indices[0 until count]
+    private fun sort(samples: DoubleArray, offset: Int, stride: Int, count: Int) {
+        var from = indices
+        var to = mergeIndices
+        var width = 1
+        while (width < count) {
+            var left = 0
+            while (left < count) {
+                val middle = min(left + width, count)
+                val right = min(left + width + width, count)
+                var i = left
+                var j = middle
+                var k = left
+                while (i < middle && j < right) {
+                    if (compare(samples, (offset + from[j] * stride) * 3, (offset + from[i] * stride) * 3) < 0) {
+                        to[k++] = from[j++]
+                    } else {
+                        to[k++] = from[i++]
+                    }
+                }
+                while (i < middle) {
+                    to[k++] = from[i++]
+                }
+                while (j < right) {
+                    to[k++] = from[j++]
+                }
+                left = right
+            }
+            val swap = from
+            from = to
+            to = swap
+            width += width
+        }
+        if (from !== indices) {
+            System.arraycopy(from, 0, indices, 0, count)
+        }
+    }
+
+    private fun compare(samples: DoubleArray, index1: Int, index2: Int): Int {
+        var result = java.lang.Double.compare(samples[index1 + 2], samples[index2 + 2])
+        if (result == 0) {
+            result = java.lang.Double.compare(samples[index1 + 1], samples[index2 + 1])
+            if (result == 0) {
+                result = java.lang.Double.compare(samples[index1], samples[index2])
+            }
+        }
+        return result
+    }
+}
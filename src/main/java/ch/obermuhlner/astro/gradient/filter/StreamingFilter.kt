@@ -0,0 +1,10 @@
+package ch.obermuhlner.astro.gradient.filter
+
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.color.ColorModel
+
+// A filter that needs the whole image, but reads every source row only once.
+// An image graph can feed such a filter from its row bands, so that the source is never materialized.
+interface StreamingFilter : Filter {
+    fun filter(source: RowSource, sourceColorModel: ColorModel, target: DoubleImage, width: Int, height: Int): DoubleImage
+}
@@ -1,26 +1,38 @@
 package ch.obermuhlner.astro.gradient.filter
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.Parallel
 import ch.obermuhlner.astro.image.color.ColorModel
-import java.util.*
 
 class VerticalMedianFilter constructor(private val radius: Int, private val model: ColorModel) : Filter {
+    override val support: Int
+        get() = radius
+
     override fun filter(source: DoubleImage, target: DoubleImage, width: Int, height: Int): DoubleImage {
-        val data: Array<DoubleArray> = Array(height) { DoubleArray(3) }
-        for (x in 0 until width) {
-            for (y in 0 until height) {
-                var n = 0
-                for (dy in -radius..radius) {
-                    val yy: Int = y + dy
-                    if (source.isValidPixel(x, yy)) {
-                        source.getPixel(x, yy, model, data[n++])
-                    }
+        if (width <= 0 || height <= 0) {
+            return target
+        }
+
+        val lineLength = height + radius + radius
+        val lock = Any()
+        Parallel.forEachBand(width, BAND_WIDTH) { startX, endX ->
+            val columns = endX - startX
+            val samples = DoubleArray(columns * lineLength * 3)
+            val valid = BooleanArray(columns * lineLength)
+            val medians = DoubleArray(columns * height * 3)
+            val slidingMedian = SlidingMedian(lineLength)
+
+            synchronized(lock) {
+                source.getRegion(startX, -radius, columns, lineLength, model, samples)
+            }
+            for (column in 0 until columns) {
+                for (i in 0 until lineLength) {
+                    valid[i * columns + column] = source.isValidPixel(startX + column, i - radius)
                 }
-                Arrays.sort(data, 0, n,
-                        Comparator.comparingDouble { c: DoubleArray -> c[2] }
-                        .thenComparing { c: DoubleArray -> c[1] }
-                        .thenComparing { c: DoubleArray -> c[0] })
-                target.setPixel(x, y, model, data[n / 2])
+                slidingMedian.filter(samples, valid, column, columns, lineLength, radius, medians, column, columns)
+            }
+            synchronized(lock) {
+                target.setRegion(startX, 0, columns, height, model, medians)
             }
         }
         return target
@@ -29,4 +41,8 @@ class VerticalMedianFilter constructor(private val radius: Int, private val mode
     override fun toString(): String {
         return "VerticalMedianFilter(radius=$radius)"
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val BAND_WIDTH = 16
+    }
+}
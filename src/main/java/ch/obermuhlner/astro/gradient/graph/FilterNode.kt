@@ -0,0 +1,65 @@
+package ch.obermuhlner.astro.gradient.graph
+
+import ch.obermuhlner.astro.gradient.filter.Filter
+import ch.obermuhlner.astro.gradient.filter.RowSource
+import ch.obermuhlner.astro.gradient.filter.StreamingFilter
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.FloatPlanarDoubleImage
+import kotlin.math.max
+import kotlin.math.min
+
+internal class FilterNode(private val input: ImageNode, private val filter: Filter) : ImageNode(input.width, input.height, input.colorModel) {
+    private val support: Int? = filter.support
+
+    // filters that need the whole image (or a halo larger than the bands) are calculated once for the whole image
+    private val filteredImage: DoubleImage by lazy {
+        filterWholeImage(FloatPlanarDoubleImage(width, height, colorModel))
+    }
+
+    override fun render(target: DoubleImage, bandHeight: Int): DoubleImage {
+        if (support == null || support > MAX_HALO) {
+            // filter directly into the target instead of into an intermediate image that would only be copied
+            return filterWholeImage(target)
+        }
+        return super.render(target, bandHeight)
+    }
+
+    // a streaming filter reads the input bands as they are calculated, other filters need the input as a whole image
+    private fun filterWholeImage(target: DoubleImage): DoubleImage {
+        if (filter is StreamingFilter) {
+            val filterWidth = min(width, target.width)
+            val rows = RowSource { startY, rows, samples ->
+                input.region(0, startY, filterWidth, rows, samples)
+            }
+            return filter.filter(rows, input.colorModel, target, filterWidth, min(height, target.height))
+        }
+        return filter.filter(input.image(), target)
+    }
+
+    override fun region(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray) {
+        if (support == null || support > MAX_HALO) {
+            filteredImage.getRegion(x, y, width, height, colorModel, samples)
+            return
+        }
+
+        val haloX = max(0, x - support)
+        val haloY = max(0, y - support)
+        val haloWidth = min(this.width, x + width + support) - haloX
+        val haloHeight = min(this.height, y + height + support) - haloY
+        val haloSamples = DoubleArray(haloWidth * haloHeight * 3)
+        input.region(haloX, haloY, haloWidth, haloHeight, haloSamples)
+
+        val source = RegionDoubleImage(haloWidth, haloHeight, colorModel, 0, 0, haloWidth, haloHeight, haloSamples)
+        val target = RegionDoubleImage(haloWidth, haloHeight, colorModel, 0, 0, haloWidth, haloHeight, DoubleArray(haloSamples.size))
+        filter.filter(source, target, haloWidth, haloHeight)
+        target.getNativeRegion(x - haloX, y - haloY, width, height, samples, 0)
+    }
+
+    override fun toString(): String {
+        return "Filter($filter, $input)"
+    }
+
+    companion object {
+        private const val MAX_HALO = DEFAULT_BAND_HEIGHT / 2
+    }
+}
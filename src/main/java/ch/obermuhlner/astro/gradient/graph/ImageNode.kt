@@ -0,0 +1,53 @@
+package ch.obermuhlner.astro.gradient.graph
+
+import ch.obermuhlner.astro.gradient.filter.Filter
+import ch.obermuhlner.astro.gradient.operation.ImageOperation
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.FloatPlanarDoubleImage
+import ch.obermuhlner.astro.image.Parallel
+import ch.obermuhlner.astro.image.color.ColorModel
+
+// Lazy image processing graph.
+// Nothing is calculated until the graph is rendered, then the result is calculated in row bands that are processed in parallel.
+// Every node only calculates the rows that are requested, so intermediate images of the whole frame are avoided
+// (except for the input of filters that need the whole image or a very large neighbourhood and do not stream it, see StreamingFilter).
+abstract class ImageNode(val width: Int, val height: Int, val colorModel: ColorModel) {
+
+    // fills the samples (in the color model of this node) of a region that is inside the image
+    abstract fun region(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray)
+
+    fun filter(filter: Filter): ImageNode {
+        return FilterNode(this, filter)
+    }
+
+    fun operation(operation: ImageOperation, other: ImageNode): ImageNode {
+        return OperationNode(this, other, operation)
+    }
+
+    fun operation(operation: ImageOperation, other: DoubleImage): ImageNode {
+        return operation(operation, source(other, colorModel))
+    }
+
+    open fun render(target: DoubleImage, bandHeight: Int = DEFAULT_BAND_HEIGHT): DoubleImage {
+        Parallel.forEachBand(height, bandHeight) { startY, endY ->
+            val samples = DoubleArray(width * (endY - startY) * 3)
+            region(0, startY, width, endY - startY, samples)
+            synchronized(target) {
+                target.setRegion(0, startY, width, endY - startY, colorModel, samples)
+            }
+        }
+        return target
+    }
+
+    fun image(): DoubleImage {
+        return render(FloatPlanarDoubleImage(width, height, colorModel))
+    }
+
+    companion object {
+        const val DEFAULT_BAND_HEIGHT = 256
+
+        fun source(image: DoubleImage, colorModel: ColorModel = image.colorModel): ImageNode {
+            return SourceNode(image, colorModel)
+        }
+    }
+}
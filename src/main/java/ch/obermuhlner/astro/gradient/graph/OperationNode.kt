@@ -0,0 +1,22 @@
+package ch.obermuhlner.astro.gradient.graph
+
+import ch.obermuhlner.astro.gradient.operation.ImageOperation
+
+internal class OperationNode(private val input1: ImageNode, private val input2: ImageNode, private val operation: ImageOperation) : ImageNode(input1.width, input1.height, input1.colorModel) {
+    override fun region(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray) {
+        val samples1 = DoubleArray(width * height * 3)
+        val samples2 = DoubleArray(width * height * 3)
+        input1.region(x, y, width, height, samples1)
+        input2.region(x, y, width, height, samples2)
+
+        // the operation sees images of the full size, so that it can use the pixel coordinates
+        val image1 = RegionDoubleImage(this.width, this.height, input1.colorModel, x, y, width, height, samples1)
+        val image2 = RegionDoubleImage(this.width, this.height, input2.colorModel, x, y, width, height, samples2)
+        val result = RegionDoubleImage(this.width, this.height, colorModel, x, y, width, height, samples)
+        operation.operation(image1, image2, result, x, y, width, height)
+    }
+
+    override fun toString(): String {
+        return "Operation($operation, $input1, $input2)"
+    }
+}
@@ -0,0 +1,64 @@
+package ch.obermuhlner.astro.gradient.graph
+
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.color.ColorModel
+import kotlin.math.max
+import kotlin.math.min
+
+// Image of the specified size that only stores the samples of a region.
+// Pixels outside of the region are clamped to the region, writes outside of the region are ignored.
+internal class RegionDoubleImage(
+        override val width: Int,
+        override val height: Int,
+        override val colorModel: ColorModel,
+        private val regionX: Int,
+        private val regionY: Int,
+        private val regionWidth: Int,
+        private val regionHeight: Int,
+        private val samples: DoubleArray) : DoubleImage {
+
+    override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
+        System.arraycopy(samples, index(x, y), color, 0, 3)
+        return color
+    }
+
+    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
+        if (isInsideRegion(x, y, 1, 1)) {
+            System.arraycopy(color, 0, samples, index(x, y), 3)
+        }
+    }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        if (!isInsideRegion(x, y, width, height)) {
+            return super.getNativeRegion(x, y, width, height, samples, offset)
+        }
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            System.arraycopy(this.samples, index(x, yy), samples, targetIndex, width * 3)
+            targetIndex += width * 3
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        if (!isInsideRegion(x, y, width, height)) {
+            super.setNativeRegion(x, y, width, height, samples, offset)
+            return
+        }
+        var sourceIndex = offset
+        for (yy in y until y + height) {
+            System.arraycopy(samples, sourceIndex, this.samples, index(x, yy), width * 3)
+            sourceIndex += width * 3
+        }
+    }
+
+    private fun isInsideRegion(x: Int, y: Int, width: Int, height: Int): Boolean {
+        return x >= regionX && y >= regionY && x + width <= regionX + regionWidth && y + height <= regionY + regionHeight
+    }
+
+    private fun index(x: Int, y: Int): Int {
+        val xx = max(0, min(regionWidth - 1, x - regionX))
+        val yy = max(0, min(regionHeight - 1, y - regionY))
+        return (xx + yy * regionWidth) * 3
+    }
+}
@@ -0,0 +1,16 @@
+package ch.obermuhlner.astro.gradient.graph
+
+import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.color.ColorModel
+
+internal class SourceNode(private val image: DoubleImage, colorModel: ColorModel) : ImageNode(image.width, image.height, colorModel) {
+    override fun region(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray) {
+        synchronized(image) {
+            image.getRegion(x, y, width, height, colorModel, samples)
+        }
+    }
+
+    override fun toString(): String {
+        return "Source($image)"
+    }
+}
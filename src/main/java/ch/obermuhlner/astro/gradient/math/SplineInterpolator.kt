@@ -1,11 +1,17 @@
 package ch.obermuhlner.astro.gradient.math
 
+import java.util.*
+import kotlin.math.abs
 import kotlin.math.hypot
+import kotlin.math.min
 
 /**
  * https://gist.github.com/lecho/7627739
  */
-class SplineInterpolator private constructor(private val mX: List<Double>, private val mY: List<Double>, private val mM: DoubleArray) {
+class SplineInterpolator private constructor(private val mX: DoubleArray, private val mY: DoubleArray, private val mM: DoubleArray) {
+    // inverse distance of the control points if they are uniformly spaced, else 0
+    private val mInvStep: Double = uniformInvStep(mX)
+
     /**
      * Interpolates the value of Y = f(X) for given X. Clamps X to the domain of the spline.
      *
@@ -28,12 +34,9 @@ class SplineInterpolator private constructor(private val mX: List<Double>, priva
 
         // Find the index 'i' of the last point with smaller X.
         // We know this will be within the spline due to the boundary tests.
-        var i: Int = 0
-        while (x >= mX[i + 1]) {
-            i += 1
-            if (x == mX[i]) {
-                return mY[i]
-            }
+        val i: Int = segment(x)
+        if (x == mX[i]) {
+            return mY[i]
         }
 
         // Perform cubic Hermite spline interpolation.
@@ -43,6 +46,66 @@ class SplineInterpolator private constructor(private val mX: List<Double>, priva
                 + (mY[i + 1] * (3 - 2 * t) + h * mM[i + 1] * (t - 1)) * t * t)
     }
 
+    /**
+     * Interpolates the values of Y = f(X) for many X. Clamps X to the domain of the spline.
+     *
+     * The results are identical to calling [interpolate] for every single X.
+     *
+     * @param input
+     * The X values.
+     * @param output
+     * The array receiving the interpolated Y = f(X) values, may be the same as the input array.
+     * @param offset
+     * The index of the first value in both arrays.
+     * @param length
+     * The number of values to interpolate.
+     * @return The output array.
+     */
+    fun interpolate(input: DoubleArray, output: DoubleArray, offset: Int, length: Int): DoubleArray {
+        val n: Int = mX.size
+        val minX = mX[0]
+        val maxX = mX[n - 1]
+        for (index in offset until offset + length) {
+            val x = input[index]
+            if (java.lang.Double.isNaN(x)) {
+                output[index] = x
+            } else if (x <= minX) {
+                output[index] = mY[0]
+            } else if (x >= maxX) {
+                output[index] = mY[n - 1]
+            } else {
+                val i: Int = segment(x)
+                val h: Double = mX[i + 1] - mX[i]
+                val t: Double = (x - mX[i]) / h
+                output[index] = if (x == mX[i]) {
+                    mY[i]
+                } else {
+                    ((mY[i] * (1 + 2 * t) + h * mM[i] * t) * (1 - t) * (1 - t)
+                            + (mY[i + 1] * (3 - 2 * t) + h * mM[i + 1] * (t - 1)) * t * t)
+                }
+            }
+        }
+        return output
+    }
+
+    // Returns the index of the last control point with X <= x, requires mX[0] < x < mX[n - 1].
+    private fun segment(x: Double): Int {
+        if (mInvStep > 0.0) {
+            // uniform knots - estimate the segment directly and correct rounding errors
+            var i = min(((x - mX[0]) * mInvStep).toInt(), mX.size - 2)
+            while (i > 0 && x < mX[i]) {
+                i--
+            }
+            while (x >= mX[i + 1]) {
+                i++
+            }
+            return i
+        }
+
+        val index = Arrays.binarySearch(mX, x)
+        return if (index >= 0) index else -index - 2
+    }
+
     // For debugging.
     override fun toString(): String {
         val str: StringBuilder = StringBuilder()
@@ -80,7 +143,29 @@ class SplineInterpolator private constructor(private val mX: List<Double>, priva
          * if the X or Y arrays are null, have different lengths or have fewer than 2 values.
          */
         fun createMonotoneCubicSpline(x: List<Double>?, y: List<Double>?): SplineInterpolator {
-            if ((x == null) || (y == null) || (x.size != y.size) || (x.size < 2)) {
+            if ((x == null) || (y == null)) {
+                throw IllegalArgumentException(("There must be at least two control "
+                        + "points and the arrays must be of equal length."))
+            }
+            return createMonotoneCubicSpline(x.toDoubleArray(), y.toDoubleArray())
+        }
+
+        /**
+         * Creates a monotone cubic spline from a given set of control points.
+         *
+         * The arrays are used directly by the spline and must not be modified afterwards.
+         *
+         * @param x
+         * The X component of the control points, strictly increasing.
+         * @param y
+         * The Y component of the control points
+         * @return
+         *
+         * @throws IllegalArgumentException
+         * if the X or Y arrays have different lengths or have fewer than 2 values.
+         */
+        fun createMonotoneCubicSpline(x: DoubleArray, y: DoubleArray): SplineInterpolator {
+            if ((x.size != y.size) || (x.size < 2)) {
                 throw IllegalArgumentException(("There must be at least two control "
                         + "points and the arrays must be of equal length."))
             }
@@ -122,5 +207,18 @@ class SplineInterpolator private constructor(private val mX: List<Double>, priva
             }
             return SplineInterpolator(x, y, m)
         }
+
+        private fun uniformInvStep(x: DoubleArray): Double {
+            val n: Int = x.size
+            val step = (x[n - 1] - x[0]) / (n - 1)
+            for (i in 1 until n - 1) {
+                if (abs(x[i] - (x[0] + i * step)) > step * UNIFORM_TOLERANCE) {
+                    return 0.0
+                }
+            }
+            return 1.0 / step
+        }
+
+        private const val UNIFORM_TOLERANCE = 1e-9
     }
 }
\ No newline at end of file
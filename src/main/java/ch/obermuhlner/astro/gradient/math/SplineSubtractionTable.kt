@@ -0,0 +1,98 @@
+package ch.obermuhlner.astro.gradient.math
+
+import java.util.concurrent.atomic.AtomicReferenceArray
+import kotlin.math.ceil
+import kotlin.math.min
+
+// Monotone cubic splines through (0, 0), (delta, delta * factor), the additional xy pairs and (1, 1).
+// The splines are created lazily and cached for deltas quantized to 16 bits.
+// Deltas that cannot be quantized without changing the order of the control points use an exact spline.
+class SplineSubtractionTable(private val factor: Double, private val xyPairs: DoubleArray) {
+    private val splines = AtomicReferenceArray<SplineInterpolator>(LEVELS)
+    private val maxLevel: Int
+
+    init {
+        val nextX = if (xyPairs.isNotEmpty()) xyPairs[0] else 1.0
+        var level = min(LEVELS - 1.0, ceil(nextX * (LEVELS - 1)) - 1).toInt()
+        while (level > 0 && levelDelta(level) >= nextX) {
+            level--
+        }
+        maxLevel = level
+    }
+
+    fun subtract(sample: Double, delta: Double): Double {
+        if (delta <= 0.0) {
+            return sample
+        }
+        val level = level(delta)
+        if (level > 0) {
+            return cachedSpline(level).interpolate(sample)
+        }
+        return createSpline(delta).interpolate(sample)
+    }
+
+    // Subtracts the deltas from the samples, consecutive values with the same quantized delta are interpolated as one batch.
+    fun subtract(samples: DoubleArray, deltas: DoubleArray, result: DoubleArray, offset: Int, length: Int): DoubleArray {
+        val end = offset + length
+        var index = offset
+        while (index < end) {
+            val delta = deltas[index]
+            if (delta <= 0.0) {
+                result[index] = samples[index]
+                index++
+                continue
+            }
+            val level = level(delta)
+            if (level == 0) {
+                result[index] = createSpline(delta).interpolate(samples[index])
+                index++
+                continue
+            }
+            var runEnd = index + 1
+            while (runEnd < end && deltas[runEnd] > 0.0 && level(deltas[runEnd]) == level) {
+                runEnd++
+            }
+            cachedSpline(level).interpolate(samples, result, index, runEnd - index)
+            index = runEnd
+        }
+        return result
+    }
+
+    // Returns the cached level for the delta, or 0 if the delta needs an exact spline.
+    private fun level(delta: Double): Int {
+        val level = if (delta < 1.0) (delta * (LEVELS - 1) + 0.5).toInt() else 0
+        return if (level <= maxLevel) level else 0
+    }
+
+    private fun cachedSpline(level: Int): SplineInterpolator {
+        var spline = splines.get(level)
+        if (spline == null) {
+            spline = createSpline(levelDelta(level))
+            splines.set(level, spline)
+        }
+        return spline
+    }
+
+    private fun createSpline(delta: Double): SplineInterpolator {
+        val n = xyPairs.size / 2 + 3
+        val xPoints = DoubleArray(n)
+        val yPoints = DoubleArray(n)
+        xPoints[1] = delta
+        yPoints[1] = delta * factor
+        for (i in 0 until xyPairs.size / 2) {
+            xPoints[i + 2] = xyPairs[i * 2 + 0]
+            yPoints[i + 2] = xyPairs[i * 2 + 1]
+        }
+        xPoints[n - 1] = 1.0
+        yPoints[n - 1] = 1.0
+        return SplineInterpolator.createMonotoneCubicSpline(xPoints, yPoints)
+    }
+
+    private fun levelDelta(level: Int): Double {
+        return level.toDouble() / (LEVELS - 1)
+    }
+
+    companion object {
+        private const val LEVELS = 65536
+    }
+}
\ No newline at end of file
@@ -1,20 +1,41 @@
 package ch.obermuhlner.astro.gradient.operation
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.ScratchArrays
+import ch.obermuhlner.astro.image.TileScheduler
 import ch.obermuhlner.astro.image.color.ColorModel
 
 abstract class AbstractPixelImageOperation : ImageOperation {
+    var scheduler: TileScheduler = TileScheduler.default
+
+    private val scratchArrays = ScratchArrays(2)
+
     override fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage): DoubleImage {
-        val samples = DoubleArray(3)
+        return operation(image1, image2, result, 0, 0, image2.width, image1.height)
+    }
+
+    // pixelOperation() is called concurrently for different tiles, so reading the images must be thread safe
+    override fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage, x: Int, y: Int, width: Int, height: Int): DoubleImage {
         val colorModel: ColorModel = result.colorModel
-        for (y in 0 until image1.height) {
-            for (x in 0 until image2.width) {
-                val pixelResult: DoubleArray = pixelOperation(image1, image2, x, y, samples)
-                result.setPixel(x, y, colorModel, pixelResult)
+        scheduler.forEachTile(x, y, width, height) { tileX, tileY, tileWidth, tileHeight ->
+            scratchArrays.use { scratch ->
+                val samples = scratch.array(0, 3)
+                val tileSamples = scratch.array(1, tileWidth * tileHeight * 3)
+                var index = 0
+                for (yy in tileY until tileY + tileHeight) {
+                    for (xx in tileX until tileX + tileWidth) {
+                        val pixelResult: DoubleArray = pixelOperation(image1, image2, xx, yy, samples)
+                        System.arraycopy(pixelResult, 0, tileSamples, index, 3)
+                        index += 3
+                    }
+                }
+                synchronized(result) {
+                    result.setRegion(tileX, tileY, tileWidth, tileHeight, colorModel, tileSamples)
+                }
             }
         }
         return result
     }
 
     protected abstract fun pixelOperation(image1: DoubleImage, image2: DoubleImage, x: Int, y: Int, result: DoubleArray?): DoubleArray
-}
\ No newline at end of file
+}
@@ -1,23 +1,57 @@
 package ch.obermuhlner.astro.gradient.operation
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.ScratchArrays
+import ch.obermuhlner.astro.image.TileScheduler
 import ch.obermuhlner.astro.image.color.ColorModel
 
 abstract class AbstractSimplePixelImageOperation : ImageOperation {
+    var scheduler: TileScheduler = TileScheduler.default
+
+    private val scratchArrays = ScratchArrays(6)
+
     override fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage): DoubleImage {
-        val pixel1: DoubleArray = DoubleArray(3)
-        val pixel2: DoubleArray = DoubleArray(3)
-        val pixelResult: DoubleArray = DoubleArray(3)
+        return operation(image1, image2, result, 0, 0, image1.width, image1.height)
+    }
+
+    // pixelOperation() is called concurrently for different tiles
+    override fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage, x: Int, y: Int, width: Int, height: Int): DoubleImage {
         val colorModel: ColorModel = result.colorModel
-        for (y in 0 until image1.height) {
-            for (x in 0 until image1.width) {
-                image1.getPixel(x, y, colorModel, pixel1)
-                image2.getPixel(x, y, colorModel, pixel2)
-                result.setPixel(x, y, colorModel, pixelOperation(pixel1, pixel2, x, y, pixelResult))
+        scheduler.forEachTile(x, y, width, height) { tileX, tileY, tileWidth, tileHeight ->
+            scratchArrays.use { scratch ->
+                val pixel1 = scratch.array(0, 3)
+                val pixel2 = scratch.array(1, 3)
+                val pixelResult = scratch.array(2, 3)
+                val samples1 = scratch.array(3, tileWidth * tileHeight * 3)
+                val samples2 = scratch.array(4, tileWidth * tileHeight * 3)
+                val samplesResult = scratch.array(5, tileWidth * tileHeight * 3)
+                synchronized(image1) {
+                    image1.getRegion(tileX, tileY, tileWidth, tileHeight, colorModel, samples1)
+                }
+                synchronized(image2) {
+                    image2.getRegion(tileX, tileY, tileWidth, tileHeight, colorModel, samples2)
+                }
+                tileOperation(samples1, samples2, tileX, tileY, tileWidth, tileHeight, samplesResult, pixel1, pixel2, pixelResult)
+                synchronized(result) {
+                    result.setRegion(tileX, tileY, tileWidth, tileHeight, colorModel, samplesResult)
+                }
             }
         }
         return result
     }
 
+    // calculates all pixels of a tile, may be overridden to process the interleaved samples of the tile in one batch
+    protected open fun tileOperation(samples1: DoubleArray, samples2: DoubleArray, tileX: Int, tileY: Int, tileWidth: Int, tileHeight: Int, samplesResult: DoubleArray, pixel1: DoubleArray, pixel2: DoubleArray, pixelResult: DoubleArray) {
+        var index = 0
+        for (yy in tileY until tileY + tileHeight) {
+            for (xx in tileX until tileX + tileWidth) {
+                System.arraycopy(samples1, index, pixel1, 0, 3)
+                System.arraycopy(samples2, index, pixel2, 0, 3)
+                System.arraycopy(pixelOperation(pixel1, pixel2, xx, yy, pixelResult), 0, samplesResult, index, 3)
+                index += 3
+            }
+        }
+    }
+
     protected abstract fun pixelOperation(pixel1: DoubleArray, pixel2: DoubleArray, x: Int, y: Int, result: DoubleArray): DoubleArray
-}
\ No newline at end of file
+}
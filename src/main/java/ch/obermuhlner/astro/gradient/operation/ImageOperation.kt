@@ -1,11 +1,17 @@
 package ch.obermuhlner.astro.gradient.operation
 
-import ch.obermuhlner.astro.image.ArrayDoubleImage
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.FloatPlanarDoubleImage
 
 open interface ImageOperation {
     fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage): DoubleImage
     fun operation(image1: DoubleImage, image2: DoubleImage): DoubleImage {
-        return operation(image1, image2, ArrayDoubleImage(image1.width, image1.height, image1.colorModel))
+        return operation(image1, image2, FloatPlanarDoubleImage(image1.width, image1.height, image1.colorModel))
     }
-}
\ No newline at end of file
+
+    // calculates only the result pixels inside the specified region
+    fun operation(image1: DoubleImage, image2: DoubleImage, result: DoubleImage, x: Int, y: Int, width: Int, height: Int): DoubleImage {
+        operation(image1.croppedImage(x, y, width, height), image2.croppedImage(x, y, width, height), result.croppedImage(x, y, width, height))
+        return result
+    }
+}
@@ -1,32 +1,16 @@
 package ch.obermuhlner.astro.gradient.operation
 
-import ch.obermuhlner.astro.gradient.math.SplineInterpolator
-import java.util.*
+import ch.obermuhlner.astro.gradient.math.SplineSubtractionTable
 
 class SubtractSplineImageOperation constructor(private val factor: Double, private vararg val xyPairs: Double) : AbstractSimpleChannelImageOperation() {
+    private val splines = SplineSubtractionTable(factor, xyPairs)
+
     override fun channelOperation(channel1: Double, channel2: Double, x: Int, y: Int, channelIndex: Int): Double {
-        if (channel2 <= 0.0) {
-            return channel1
-        }
-        val xPoints: MutableList<Double> = ArrayList()
-        val yPoints: MutableList<Double> = ArrayList()
-        xPoints.add(0.0)
-        yPoints.add(0.0)
-        xPoints.add(channel2)
-        yPoints.add(channel2 * factor)
-        var i: Int = 0
-        while (i < xyPairs.size) {
-            xPoints.add(xyPairs[i + 0])
-            yPoints.add(xyPairs[i + 1])
-            i += 2
-        }
-        xPoints.add(1.0)
-        yPoints.add(1.0)
-        val spline: SplineInterpolator = SplineInterpolator.createMonotoneCubicSpline(
-                xPoints,
-                yPoints
-        )
-        return spline.interpolate(channel1)
+        return splines.subtract(channel1, channel2)
+    }
+
+    override fun tileOperation(samples1: DoubleArray, samples2: DoubleArray, tileX: Int, tileY: Int, tileWidth: Int, tileHeight: Int, samplesResult: DoubleArray, pixel1: DoubleArray, pixel2: DoubleArray, pixelResult: DoubleArray) {
+        splines.subtract(samples1, samples2, samplesResult, 0, tileWidth * tileHeight * 3)
     }
 
     override fun toString(): String {
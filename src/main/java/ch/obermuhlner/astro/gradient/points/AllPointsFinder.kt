@@ -14,4 +14,8 @@ class AllPointsFinder : PointsFinder {
     override fun getRelevantFixPoints(point: Point): List<Point> {
         return points
     }
+
+    override fun getRelevantFixPoints(x: Int, y: Int, width: Int, height: Int): List<Point>? {
+        return points
+    }
 }
\ No newline at end of file
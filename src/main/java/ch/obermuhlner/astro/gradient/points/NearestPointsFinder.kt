@@ -1,23 +1,19 @@
 package ch.obermuhlner.astro.gradient.points
 
 import ch.obermuhlner.astro.gradient.Point
-import java.util.*
-import kotlin.math.min
 
 class NearestPointsFinder constructor(private val n: Int) : PointsFinder {
-    private val points: MutableList<Point> = ArrayList()
+    private var tree = PointKdTree(emptyList())
 
     override fun setFixPoints(points: Collection<Point>) {
-        this.points.clear()
-        this.points.addAll(points)
+        tree = PointKdTree(points)
     }
 
     override fun getRelevantFixPoints(point: Point): List<Point> {
-        points.sortWith(Comparator.comparingDouble { p: Point? -> point.distanceSquare(p) })
-        val result: MutableList<Point> = ArrayList(n)
-        for (i in 0 until min(n, points.size)) {
-            result.add(points[i])
-        }
-        return result
+        return tree.nearest(point.x, point.y, n)
+    }
+
+    override fun getRelevantFixPoints(x: Int, y: Int, width: Int, height: Int): List<Point>? {
+        return tree.nearest(x, y, width, height, n)
     }
 }
\ No newline at end of file
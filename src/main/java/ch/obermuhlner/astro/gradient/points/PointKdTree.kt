@@ -0,0 +1,160 @@
+package ch.obermuhlner.astro.gradient.points
+
+import ch.obermuhlner.astro.gradient.Point
+import kotlin.math.abs
+import kotlin.math.max
+
+// Immutable 2-d tree over a set of points - queries are thread-safe.
+// Every range of nodes is split at its median, alternating between the x and y axis.
+class PointKdTree(points: Collection<Point>) {
+    private val points: Array<Point> = points.toTypedArray()
+    private val nodes = IntArray(this.points.size) { it }
+
+    val size: Int
+        get() = points.size
+
+    init {
+        build(0, nodes.size, 0)
+    }
+
+    private fun build(start: Int, end: Int, depth: Int) {
+        if (end - start <= 1) {
+            return
+        }
+        val sorted = nodes.copyOfRange(start, end).sortedBy { coordinate(points[it], depth) }
+        for (i in sorted.indices) {
+            nodes[start + i] = sorted[i]
+        }
+        val mid = (start + end) ushr 1
+        build(start, mid, depth + 1)
+        build(mid + 1, end, depth + 1)
+    }
+
+    // Returns the k nearest points sorted by distance, equally distant points in the order they were added.
+    fun nearest(x: Int, y: Int, k: Int): List<Point> {
+        val neighbours = Neighbours(k)
+        if (k > 0) {
+            nearest(0, nodes.size, 0, x, y, neighbours)
+        }
+        return neighbours.toList()
+    }
+
+    // Returns the k nearest points if they are the same for all points in the specified region, otherwise null.
+    // The points are sorted by distance to the center of the region.
+    fun nearest(x: Int, y: Int, width: Int, height: Int, k: Int): List<Point>? {
+        val result = nearest(x + (width - 1) / 2, y + (height - 1) / 2, k)
+        if (result.size < k) {
+            return result
+        }
+
+        // the candidates are the nearest points everywhere in the region, if no other point is closer to the region than their farthest distance
+        val maxX = x + width - 1
+        val maxY = y + height - 1
+        var maxDistanceSquare = 0.0
+        for (point in result) {
+            val dx = max(abs(point.x - x), abs(point.x - maxX)).toDouble()
+            val dy = max(abs(point.y - y), abs(point.y - maxY)).toDouble()
+            maxDistanceSquare = max(maxDistanceSquare, dx * dx + dy * dy)
+        }
+        if (countWithin(0, nodes.size, 0, x, y, maxX, maxY, maxDistanceSquare, k + 1) > k) {
+            return null
+        }
+        return result
+    }
+
+    private fun nearest(start: Int, end: Int, depth: Int, x: Int, y: Int, neighbours: Neighbours) {
+        if (start >= end) {
+            return
+        }
+        val mid = (start + end) ushr 1
+        val index = nodes[mid]
+        val point = points[index]
+        val dx = (point.x - x).toDouble()
+        val dy = (point.y - y).toDouble()
+        neighbours.offer(index, dx * dx + dy * dy)
+
+        val delta = if (depth % 2 == 0) dx else dy
+        if (delta > 0) {
+            nearest(start, mid, depth + 1, x, y, neighbours)
+            if (!neighbours.isFull() || delta * delta <= neighbours.maxDistanceSquare()) {
+                nearest(mid + 1, end, depth + 1, x, y, neighbours)
+            }
+        } else {
+            nearest(mid + 1, end, depth + 1, x, y, neighbours)
+            if (!neighbours.isFull() || delta * delta <= neighbours.maxDistanceSquare()) {
+                nearest(start, mid, depth + 1, x, y, neighbours)
+            }
+        }
+    }
+
+    // counts the points within the specified distance of the region, stops counting at the limit
+    private fun countWithin(start: Int, end: Int, depth: Int, minX: Int, minY: Int, maxX: Int, maxY: Int, distanceSquare: Double, limit: Int): Int {
+        if (start >= end) {
+            return 0
+        }
+        val mid = (start + end) ushr 1
+        val point = points[nodes[mid]]
+        val dx = max(0, max(minX - point.x, point.x - maxX)).toDouble()
+        val dy = max(0, max(minY - point.y, point.y - maxY)).toDouble()
+        var count = if (dx * dx + dy * dy <= distanceSquare) 1 else 0
+
+        val split = coordinate(point, depth)
+        val regionMin = if (depth % 2 == 0) minX else minY
+        val regionMax = if (depth % 2 == 0) maxX else maxY
+        val lowerDistance = max(0, regionMin - split).toDouble()
+        if (count < limit && lowerDistance * lowerDistance <= distanceSquare) {
+            count += countWithin(start, mid, depth + 1, minX, minY, maxX, maxY, distanceSquare, limit - count)
+        }
+        val upperDistance = max(0, split - regionMax).toDouble()
+        if (count < limit && upperDistance * upperDistance <= distanceSquare) {
+            count += countWithin(mid + 1, end, depth + 1, minX, minY, maxX, maxY, distanceSquare, limit - count)
+        }
+        return count
+    }
+
+    private fun coordinate(point: Point, depth: Int): Int {
+        return if (depth % 2 == 0) point.x else point.y
+    }
+
+    // k nearest candidates sorted by distance and index
+    private inner class Neighbours(private val k: Int) {
+        private val indices = IntArray(k)
+        private val distanceSquares = DoubleArray(k)
+        private var count = 0
+
+        fun isFull(): Boolean = count == k
+
+        fun maxDistanceSquare(): Double = distanceSquares[count - 1]
+
+        fun offer(index: Int, distanceSquare: Double) {
+            var i = count
+            if (i == k) {
+                if (!isBefore(index, distanceSquare, k - 1)) {
+                    return
+                }
+                i--
+            } else {
+                count++
+            }
+            while (i > 0 && isBefore(index, distanceSquare, i - 1)) {
+                indices[i] = indices[i - 1]
+                distanceSquares[i] = distanceSquares[i - 1]
+                i--
+            }
+            indices[i] = index
+            distanceSquares[i] = distanceSquare
+        }
+
+        private fun isBefore(index: Int, distanceSquare: Double, i: Int): Boolean {
+            return distanceSquare < distanceSquares[i] || (distanceSquare == distanceSquares[i] && index < indices[i])
+        }
+
+        fun toList(): List<Point> {
+            val result: MutableList<Point> = ArrayList(count)
+            for (i in 0 until count) {
+                result.add(points[indices[i]])
+            }
+            return result
+        }
+    }
+}
\ No newline at end of file
@@ -2,7 +2,13 @@ package ch.obermuhlner.astro.gradient.points
 
 import ch.obermuhlner.astro.gradient.Point
 
+// The relevant fix points may be queried concurrently from multiple threads.
 open interface PointsFinder {
     fun setFixPoints(points: Collection<Point>)
     fun getRelevantFixPoints(point: Point): List<Point>
+
+    // Returns the relevant fix points if they are the same for all points in the specified region, otherwise null.
+    fun getRelevantFixPoints(x: Int, y: Int, width: Int, height: Int): List<Point>? {
+        return null
+    }
 }
\ No newline at end of file
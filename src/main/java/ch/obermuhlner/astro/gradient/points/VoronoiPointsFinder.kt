@@ -9,64 +9,109 @@ import java.util.*
 
 class VoronoiPointsFinder : PointsFinder {
     private val points: MutableList<Point> = ArrayList()
-    private var delaunayPoints: List<Vector2D>? = null
-    private var delaunayTriangles: List<Triangle2D>? = null
+    private var tree = PointKdTree(emptyList())
+    private var triangulator: DelaunayTriangulator? = null
     private var delaunayMapToPoints: MutableMap<Vector2D, Point> = HashMap()
+    // the points of the delaunay polygon around every fix point
+    private var delaunayPolygons: Map<Point, List<Point>> = HashMap()
 
     override fun setFixPoints(points: Collection<Point>) {
+        val previousPoints: List<Point> = ArrayList(this.points)
         this.points.clear()
         this.points.addAll(points)
-        triangulate(this.points)
+        triangulate(previousPoints, this.points)
     }
 
-    private fun triangulate(points: List<Point>) {
+    private fun triangulate(previousPoints: List<Point>, points: List<Point>) {
+        tree = PointKdTree(points)
+        delaunayMapToPoints = HashMap()
+        delaunayPolygons = HashMap()
         if (points.size < 3) {
-            delaunayPoints = null
-            delaunayTriangles = null
+            triangulator = null
             return
         }
-        val vectors: MutableList<Vector2D> = ArrayList()
         for (point: Point in points) {
-            val v = Vector2D(point.x.toDouble(), point.y.toDouble())
-            delaunayMapToPoints[v] = point
-            vectors.add(v)
+            delaunayMapToPoints[toVector(point)] = point
         }
-        val triangulator = DelaunayTriangulator(vectors)
         try {
-            triangulator.triangulate()
+            delaunayPolygons = delaunayPolygons(updateTriangulator(previousPoints, points).triangles)
         } catch (e: NotEnoughPointsException) {
             throw RuntimeException(e)
         }
-        delaunayPoints = triangulator.pointSet
-        delaunayTriangles = triangulator.triangles
     }
 
-    override fun getRelevantFixPoints(point: Point): List<Point> {
-        val delaunayPolygon: MutableSet<Vector2D> = HashSet()
-        if (points.size <= 3) {
-            return points
-        }
-        val vector = Vector2D(point.x.toDouble(), point.y.toDouble())
-        var closestDelaunayPoint: Vector2D? = null
-        var closestDistance: Double = Double.MAX_VALUE
-        for (delaunayPoint: Vector2D? in delaunayPoints!!) {
-            val distance: Double = vector.sub(delaunayPoint).mag()
-            if (closestDelaunayPoint == null || distance < closestDistance) {
-                closestDelaunayPoint = delaunayPoint
-                closestDistance = distance
+    // the existing triangulation is updated incrementally if fix points were appended or a single fix point was removed
+    private fun updateTriangulator(previousPoints: List<Point>, points: List<Point>): DelaunayTriangulator {
+        val triangulator = this.triangulator
+        if (triangulator != null) {
+            if (points.size > previousPoints.size && points.subList(0, previousPoints.size) == previousPoints) {
+                for (i in previousPoints.size until points.size) {
+                    triangulator.addPoint(toVector(points[i]))
+                }
+                return triangulator
+            }
+            if (points.size == previousPoints.size - 1) {
+                var index = 0
+                while (index < points.size && points[index] == previousPoints[index]) {
+                    index++
+                }
+                if (points.subList(index, points.size) == previousPoints.subList(index + 1, previousPoints.size)) {
+                    triangulator.removePoint(triangulator.pointSet[index])
+                    return triangulator
+                }
             }
         }
-        for (triangle: Triangle2D in delaunayTriangles!!) {
-            if (triangle.hasVertex(closestDelaunayPoint)) {
+
+        val vectors: MutableList<Vector2D> = ArrayList()
+        for (point: Point in points) {
+            vectors.add(toVector(point))
+        }
+        val newTriangulator = DelaunayTriangulator(vectors)
+        newTriangulator.triangulate()
+        this.triangulator = newTriangulator
+        return newTriangulator
+    }
+
+    private fun toVector(point: Point): Vector2D {
+        return Vector2D(point.x.toDouble(), point.y.toDouble())
+    }
+
+    // collects the vertices of all triangles adjacent to every vertex, in the order of the triangles
+    private fun delaunayPolygons(triangles: List<Triangle2D>): Map<Point, List<Point>> {
+        val vertexPolygons: MutableMap<Vector2D, MutableSet<Vector2D>> = HashMap()
+        for (triangle: Triangle2D in triangles) {
+            for (vertex in setOf(triangle.a, triangle.b, triangle.c)) {
+                val delaunayPolygon = vertexPolygons.getOrPut(vertex) { HashSet() }
                 delaunayPolygon.add(triangle.a)
                 delaunayPolygon.add(triangle.b)
                 delaunayPolygon.add(triangle.c)
             }
         }
-        val result: MutableList<Point> = ArrayList()
-        for (vector2D: Vector2D in delaunayPolygon) {
-            result.add(delaunayMapToPoints[vector2D]!!)
+
+        val result: MutableMap<Point, List<Point>> = HashMap()
+        for ((vertex, delaunayPolygon) in vertexPolygons) {
+            val polygonPoints: MutableList<Point> = ArrayList()
+            for (vector2D: Vector2D in delaunayPolygon) {
+                polygonPoints.add(delaunayMapToPoints[vector2D]!!)
+            }
+            result[delaunayMapToPoints[vertex]!!] = polygonPoints
         }
         return result
     }
+
+    override fun getRelevantFixPoints(point: Point): List<Point> {
+        if (points.size <= 3) {
+            return points
+        }
+        val closestPoint = tree.nearest(point.x, point.y, 1)[0]
+        return delaunayPolygons[closestPoint] ?: emptyList()
+    }
+
+    override fun getRelevantFixPoints(x: Int, y: Int, width: Int, height: Int): List<Point>? {
+        if (points.size <= 3) {
+            return points
+        }
+        val closestPoints = tree.nearest(x, y, width, height, 1) ?: return null
+        return delaunayPolygons[closestPoints[0]] ?: emptyList()
+    }
 }
\ No newline at end of file
@@ -3,7 +3,14 @@ package ch.obermuhlner.astro.image
 import ch.obermuhlner.astro.image.color.ColorModel
 
 class ArrayDoubleImage(override val width: Int, override val height: Int, override val colorModel: ColorModel) : DoubleImage {
-    private val data = DoubleArray(width * height * SAMPLES_PER_PIXEL)
+    private val data: DoubleArray
+
+    init {
+        if (width.toLong() * height * SAMPLES_PER_PIXEL > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image too large for array storage: $width x $height")
+        }
+        data = DoubleArray(width * height * SAMPLES_PER_PIXEL)
+    }
 
     override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
         val index = (x + y * width) * SAMPLES_PER_PIXEL
@@ -20,6 +27,25 @@ class ArrayDoubleImage(override val width: Int, override val height: Int, overri
         data[index + 2] = color[2]
     }
 
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        val rowLength = width * SAMPLES_PER_PIXEL
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            System.arraycopy(data, (x + yy * this.width) * SAMPLES_PER_PIXEL, samples, targetIndex, rowLength)
+            targetIndex += rowLength
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        val rowLength = width * SAMPLES_PER_PIXEL
+        var sourceIndex = offset
+        for (yy in y until y + height) {
+            System.arraycopy(samples, sourceIndex, data, (x + yy * this.width) * SAMPLES_PER_PIXEL, rowLength)
+            sourceIndex += rowLength
+        }
+    }
+
     companion object {
         private const val SAMPLES_PER_PIXEL = 3
     }
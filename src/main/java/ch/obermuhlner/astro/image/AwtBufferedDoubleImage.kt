@@ -21,4 +21,29 @@ class AwtBufferedDoubleImage(val image: BufferedImage) : DoubleImage {
     override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
         image.setRGB(x, y, ColorUtil.toIntRGB(color))
     }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        val rgbArray = image.getRGB(x, y, width, height, null, 0, width)
+        var index = offset
+        for (rgb in rgbArray) {
+            samples[index + ColorModel.RGB.R] = (rgb shr 16 and 0xff) / 255.0
+            samples[index + ColorModel.RGB.G] = (rgb shr 8 and 0xff) / 255.0
+            samples[index + ColorModel.RGB.B] = (rgb and 0xff) / 255.0
+            index += 3
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        val rgbArray = IntArray(width * height)
+        val color = DoubleArray(3)
+        var index = offset
+        for (i in rgbArray.indices) {
+            color[0] = samples[index++]
+            color[1] = samples[index++]
+            color[2] = samples[index++]
+            rgbArray[i] = ColorUtil.toIntRGB(color)
+        }
+        image.setRGB(x, y, width, height, rgbArray, 0, width)
+    }
 }
\ No newline at end of file
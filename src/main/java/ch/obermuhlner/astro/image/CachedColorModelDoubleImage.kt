@@ -0,0 +1,87 @@
+package ch.obermuhlner.astro.image
+
+import ch.obermuhlner.astro.image.color.ColorModel
+import kotlin.math.max
+import kotlin.math.min
+
+// Keeps the samples of the image converted into another color model, so that repeated reads in that color model do not convert again.
+// The converted samples are discarded whenever pixels are written through this image, writes directly into the wrapped image are not detected.
+class CachedColorModelDoubleImage(private val image: DoubleImage, val cachedColorModel: ColorModel) : DoubleImage {
+    @Volatile
+    private var cachedSamples: DoubleArray? = null
+
+    override val width: Int
+        get() = image.width
+    override val height: Int
+        get() = image.height
+    override val colorModel: ColorModel
+        get() = image.colorModel
+
+    override fun isInsideUnderlying(x: Int, y: Int): Boolean {
+        return image.isInsideUnderlying(x, y)
+    }
+
+    override fun isValidPixel(x: Int, y: Int): Boolean {
+        return image.isValidPixel(x, y)
+    }
+
+    override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
+        return image.getNativePixel(x, y, color)
+    }
+
+    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
+        image.setNativePixel(x, y, color)
+        invalidate()
+    }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        return image.getNativeRegion(x, y, width, height, samples, offset)
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        image.setNativeRegion(x, y, width, height, samples, offset)
+        invalidate()
+    }
+
+    override fun getPixel(x: Int, y: Int, colorModel: ColorModel, color: DoubleArray): DoubleArray {
+        if (colorModel !== cachedColorModel || colorModel === this.colorModel) {
+            return super.getPixel(x, y, colorModel, color)
+        }
+        val xx = max(0, min(width - 1, x))
+        val yy = max(0, min(height - 1, y))
+        System.arraycopy(cachedSamples(), (xx + yy * width) * SAMPLES_PER_PIXEL, color, 0, SAMPLES_PER_PIXEL)
+        return color
+    }
+
+    override fun getRegion(x: Int, y: Int, width: Int, height: Int, colorModel: ColorModel, samples: DoubleArray, offset: Int): DoubleArray {
+        if (colorModel !== cachedColorModel || colorModel === this.colorModel || x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            return super.getRegion(x, y, width, height, colorModel, samples, offset)
+        }
+        val cached = cachedSamples()
+        val rowLength = width * SAMPLES_PER_PIXEL
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            System.arraycopy(cached, (x + yy * this.width) * SAMPLES_PER_PIXEL, samples, targetIndex, rowLength)
+            targetIndex += rowLength
+        }
+        return samples
+    }
+
+    @Synchronized
+    private fun cachedSamples(): DoubleArray {
+        cachedSamples?.let { return it }
+        val samples = DoubleArray(width * height * SAMPLES_PER_PIXEL)
+        image.getRegion(0, 0, width, height, cachedColorModel, samples)
+        cachedSamples = samples
+        return samples
+    }
+
+    @Synchronized
+    private fun invalidate() {
+        cachedSamples = null
+    }
+
+    companion object {
+        private const val SAMPLES_PER_PIXEL = 3
+    }
+}
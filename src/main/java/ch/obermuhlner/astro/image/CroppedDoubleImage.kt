@@ -30,7 +30,23 @@ class CroppedDoubleImage(private val image: DoubleImage, private val offsetX: In
         val xx = x + offsetX
         val yy = y + offsetY
         if (image.isInside(xx, yy)) {
-            image.setNativePixel(x + offsetX, y + offsetX, color)
+            image.setNativePixel(xx, yy, color)
         }
     }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        return image.getRegion(x + offsetX, y + offsetY, width, height, image.colorModel, samples, offset)
+    }
+
+    override fun getRegion(x: Int, y: Int, width: Int, height: Int, colorModel: ColorModel, samples: DoubleArray, offset: Int): DoubleArray {
+        if (x >= 0 && y >= 0 && x + width <= this.width && y + height <= this.height) {
+            // let the underlying image convert the color model, it might have the converted samples cached
+            return image.getRegion(x + offsetX, y + offsetY, width, height, colorModel, samples, offset)
+        }
+        return super.getRegion(x, y, width, height, colorModel, samples, offset)
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        image.setRegion(x + offsetX, y + offsetY, width, height, image.colorModel, samples, offset)
+    }
 }
\ No newline at end of file
@@ -15,6 +15,33 @@ interface DoubleImage {
     fun getNativePixel(x: Int, y: Int, color: DoubleArray = DoubleArray(3)): DoubleArray
     fun setNativePixel(x: Int, y: Int, color: DoubleArray)
 
+    fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int = 0): DoubleArray {
+        val color = DoubleArray(3)
+        var index = offset
+        for (yy in y until y + height) {
+            for (xx in x until x + width) {
+                getNativePixel(xx, yy, color)
+                samples[index++] = color[0]
+                samples[index++] = color[1]
+                samples[index++] = color[2]
+            }
+        }
+        return samples
+    }
+
+    fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int = 0) {
+        val color = DoubleArray(3)
+        var index = offset
+        for (yy in y until y + height) {
+            for (xx in x until x + width) {
+                color[0] = samples[index++]
+                color[1] = samples[index++]
+                color[2] = samples[index++]
+                setNativePixel(xx, yy, color)
+            }
+        }
+    }
+
     operator fun get(x: Int, y: Int) = getPixel(x, y)
     operator fun set(x: Int, y: Int, color: DoubleArray) = setPixel(x, y, color)
 
@@ -23,7 +50,7 @@ interface DoubleImage {
         val yy = max(0, min(height - 1, y))
         val result = getNativePixel(xx, yy, color)
         if (colorModel !== this.colorModel) {
-            ColorUtil.convert(colorModel, result, this.colorModel, result)
+            ColorUtil.convert(this.colorModel, result, colorModel, result)
         }
         return result
     }
@@ -42,15 +69,89 @@ interface DoubleImage {
         }
     }
 
+    fun getRow(y: Int, colorModel: ColorModel = ColorModel.RGB, samples: DoubleArray = DoubleArray(width * 3)): DoubleArray {
+        return getRegion(0, y, width, 1, colorModel, samples)
+    }
+
+    fun setRow(y: Int, colorModel: ColorModel = ColorModel.RGB, samples: DoubleArray) {
+        setRegion(0, y, width, 1, colorModel, samples)
+    }
+
+    fun getRegion(x: Int, y: Int, width: Int, height: Int, colorModel: ColorModel = ColorModel.RGB, samples: DoubleArray = DoubleArray(width * height * 3), offset: Int = 0): DoubleArray {
+        if (x >= 0 && y >= 0 && x + width <= this.width && y + height <= this.height) {
+            getNativeRegion(x, y, width, height, samples, offset)
+        } else {
+            val insideStart = min(width, max(0, -x))
+            val insideEnd = max(insideStart, min(width, this.width - x))
+            val color = DoubleArray(3)
+            for (dy in 0 until height) {
+                val yy = max(0, min(this.height - 1, y + dy))
+                val rowOffset = offset + dy * width * 3
+                if (insideEnd > insideStart) {
+                    getNativeRegion(x + insideStart, yy, insideEnd - insideStart, 1, samples, rowOffset + insideStart * 3)
+                }
+                for (dx in 0 until insideStart) {
+                    getNativePixel(max(0, min(this.width - 1, x + dx)), yy, color)
+                    System.arraycopy(color, 0, samples, rowOffset + dx * 3, 3)
+                }
+                for (dx in insideEnd until width) {
+                    getNativePixel(max(0, min(this.width - 1, x + dx)), yy, color)
+                    System.arraycopy(color, 0, samples, rowOffset + dx * 3, 3)
+                }
+            }
+        }
+        if (colorModel !== this.colorModel) {
+            ColorUtil.convert(this.colorModel, samples, offset, colorModel, samples, offset, width * height)
+        }
+        return samples
+    }
+
+    fun setRegion(x: Int, y: Int, width: Int, height: Int, colorModel: ColorModel = ColorModel.RGB, samples: DoubleArray, offset: Int = 0) {
+        if (colorModel === this.colorModel) {
+            setClippedNativeRegion(x, y, width, height, samples, offset)
+            return
+        }
+
+        // convert chunks of rows into a reused per thread buffer
+        val rowLength = width * 3
+        val chunkHeight = max(1, CONVERSION_CHUNK_SAMPLES / max(1, rowLength))
+        conversionScratch.use { scratch ->
+            var dy = 0
+            while (dy < height) {
+                val rows = min(chunkHeight, height - dy)
+                val nativeSamples = scratch.array(0, rows * rowLength)
+                ColorUtil.convert(colorModel, samples, offset + dy * rowLength, this.colorModel, nativeSamples, 0, rows * width)
+                setClippedNativeRegion(x, y + dy, width, rows, nativeSamples, 0)
+                dy += rows
+            }
+        }
+    }
+
+    private fun setClippedNativeRegion(x: Int, y: Int, width: Int, height: Int, nativeSamples: DoubleArray, nativeOffset: Int) {
+        if (x >= 0 && y >= 0 && x + width <= this.width && y + height <= this.height) {
+            setNativeRegion(x, y, width, height, nativeSamples, nativeOffset)
+        } else {
+            val insideStart = min(width, max(0, -x))
+            val insideEnd = max(insideStart, min(width, this.width - x))
+            if (insideEnd > insideStart) {
+                for (dy in max(0, -y) until min(height, this.height - y)) {
+                    setNativeRegion(x + insideStart, y + dy, insideEnd - insideStart, 1, nativeSamples, nativeOffset + (dy * width + insideStart) * 3)
+                }
+            }
+        }
+    }
+
     fun setPixels(fillColor: DoubleArray) {
         setPixels(ColorModel.RGB, fillColor)
     }
 
     fun setPixels(colorModel: ColorModel, fillColor: DoubleArray) {
+        val samples = DoubleArray(width * 3)
+        for (x in 0 until width) {
+            System.arraycopy(fillColor, 0, samples, x * 3, 3)
+        }
         for (y in 0 until height) {
-            for (x in 0 until width) {
-                setPixel(x, y, colorModel, fillColor)
-            }
+            setRow(y, colorModel, samples)
         }
     }
 
@@ -63,18 +164,17 @@ interface DoubleImage {
     }
 
     fun setPixels(source: DoubleImage, colorModel: ColorModel = ColorModel.RGB, outsideColor: DoubleArray? = null) {
-        val color = DoubleArray(3)
+        val samples = DoubleArray(width * 3)
         for (y in 0 until height) {
-            for (x in 0 until width) {
-                if (outsideColor == null || source.isInside(x, y)) {
-                    source.getPixel(x, y, colorModel, color)
-                } else {
-                    color[0] = outsideColor[0]
-                    color[1] = outsideColor[1]
-                    color[2] = outsideColor[2]
+            source.getRegion(0, y, width, 1, colorModel, samples)
+            if (outsideColor != null) {
+                for (x in 0 until width) {
+                    if (!source.isInside(x, y)) {
+                        System.arraycopy(outsideColor, 0, samples, x * 3, 3)
+                    }
                 }
-                setPixel(x, y, colorModel, color)
             }
+            setRow(y, colorModel, samples)
         }
     }
 
@@ -103,13 +203,14 @@ interface DoubleImage {
         var sample0 = 0.0
         var sample1 = 0.0
         var sample2 = 0.0
+        val samples = DoubleArray(width * 3)
         for (y in 0 until height) {
+            getRow(y, colorModel, samples)
             for (x in 0 until width) {
                 if (isValidPixel(x, y)) {
-                    getPixel(x, y, colorModel, color)
-                    sample0 += color[0]
-                    sample1 += color[1]
-                    sample2 += color[2]
+                    sample0 += samples[x * 3 + 0]
+                    sample1 += samples[x * 3 + 1]
+                    sample2 += samples[x * 3 + 2]
                     n++
                 }
             }
@@ -126,11 +227,12 @@ interface DoubleImage {
 
     fun medianPixel(colorModel: ColorModel = ColorModel.RGB, color: DoubleArray = DoubleArray(3)): DoubleArray {
         val data: MutableList<DoubleArray> = ArrayList(width * height)
+        val samples = DoubleArray(width * 3)
         for (y in 0 until height) {
+            getRow(y, ColorModel.HSV, samples)
             for (x in 0 until width) {
                 if (isValidPixel(x, y)) {
-                    val sample = getPixel(x, y, ColorModel.HSV)
-                    data.add(sample)
+                    data.add(samples.copyOfRange(x * 3, x * 3 + 3))
                 }
             }
         }
@@ -155,13 +257,13 @@ interface DoubleImage {
     }
 
     fun darkestPixel(colorModel: ColorModel = ColorModel.RGB, color: DoubleArray = DoubleArray(3)): DoubleArray {
-        val tempHSV = DoubleArray(3)
+        val samples = DoubleArray(width * 3)
         var bestV = 1.0
         for (y in 0 until height) {
+            getRow(y, ColorModel.HSV, samples)
             for (x in 0 until width) {
                 if (isValidPixel(x, y)) {
-                    getPixel(x, y, ColorModel.HSV, tempHSV)
-                    val v = tempHSV[ColorModel.HSV.V]
+                    val v = samples[x * 3 + ColorModel.HSV.V]
                     if (v < bestV) {
                         bestV = v
                         getPixel(x, y, colorModel, color)
@@ -173,13 +275,13 @@ interface DoubleImage {
     }
 
     fun brightestPixel(colorModel: ColorModel = ColorModel.RGB, color: DoubleArray = DoubleArray(3)): DoubleArray {
-        val tempHSV = DoubleArray(3)
+        val samples = DoubleArray(width * 3)
         var bestV = 0.0
         for (y in 0 until height) {
+            getRow(y, ColorModel.HSV, samples)
             for (x in 0 until width) {
                 if (isValidPixel(x, y)) {
-                    getPixel(x, y, ColorModel.HSV, tempHSV)
-                    val v = tempHSV[ColorModel.HSV.V]
+                    val v = samples[x * 3 + ColorModel.HSV.V]
                     if (v > bestV) {
                         bestV = v
                         getPixel(x, y, colorModel, color)
@@ -191,8 +293,14 @@ interface DoubleImage {
     }
 
     fun copyImage(): DoubleImage {
-        val copy = ArrayDoubleImage(width, height, colorModel)
+        val copy = ImageCreator.create(width, height, colorModel)
         copy.setPixels(this, colorModel, null)
         return copy
     }
+
+    companion object {
+        private const val CONVERSION_CHUNK_SAMPLES = 64 * 1024
+
+        private val conversionScratch = ScratchArrays(1)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package ch.obermuhlner.astro.image
+
+import ch.obermuhlner.astro.image.color.ColorModel
+
+class FloatPlanarDoubleImage(override val width: Int, override val height: Int, override val colorModel: ColorModel) : DoubleImage {
+    private val channel0: FloatArray
+    private val channel1: FloatArray
+    private val channel2: FloatArray
+
+    init {
+        if (width.toLong() * height > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image too large for array storage: $width x $height")
+        }
+        channel0 = FloatArray(width * height)
+        channel1 = FloatArray(width * height)
+        channel2 = FloatArray(width * height)
+    }
+
+    override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
+        val index = x + y * width
+        color[0] = channel0[index].toDouble()
+        color[1] = channel1[index].toDouble()
+        color[2] = channel2[index].toDouble()
+        return color
+    }
+
+    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
+        val index = x + y * width
+        channel0[index] = color[0].toFloat()
+        channel1[index] = color[1].toFloat()
+        channel2[index] = color[2].toFloat()
+    }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            val rowIndex = x + yy * this.width
+            for (index in rowIndex until rowIndex + width) {
+                samples[targetIndex++] = channel0[index].toDouble()
+                samples[targetIndex++] = channel1[index].toDouble()
+                samples[targetIndex++] = channel2[index].toDouble()
+            }
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        var sourceIndex = offset
+        for (yy in y until y + height) {
+            val rowIndex = x + yy * this.width
+            for (index in rowIndex until rowIndex + width) {
+                channel0[index] = samples[sourceIndex++].toFloat()
+                channel1[index] = samples[sourceIndex++].toFloat()
+                channel2[index] = samples[sourceIndex++].toFloat()
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package ch.obermuhlner.astro.image
+
+import java.lang.ref.SoftReference
+import java.util.ArrayDeque
+
+class ImageBufferPool(val maxBytes: Long = DEFAULT_MAX_BYTES) {
+    private val floatArrays = mutableMapOf<Int, ArrayDeque<SoftReference<FloatArray>>>()
+    private var pooledBytes = 0L
+
+    // the content of a borrowed array is undefined
+    @Synchronized
+    fun borrowFloatArray(size: Int): FloatArray {
+        val arrays = floatArrays[size]
+        while (arrays != null && arrays.isNotEmpty()) {
+            pooledBytes -= floatBytes(size)
+            val array = arrays.removeLast().get()
+            if (array != null) {
+                return array
+            }
+        }
+        return FloatArray(size)
+    }
+
+    @Synchronized
+    fun release(array: FloatArray) {
+        val bytes = floatBytes(array.size)
+        if (pooledBytes + bytes > maxBytes) {
+            // buffers of other sizes belong to other image dimensions and are unlikely to be needed again soon
+            floatArrays.keys.retainAll { it == array.size }
+            pooledBytes = floatArrays.values.sumOf { it.size * floatBytes(array.size) }
+            if (pooledBytes + bytes > maxBytes) {
+                return
+            }
+        }
+        floatArrays.getOrPut(array.size) { ArrayDeque() }.addLast(SoftReference(array))
+        pooledBytes += bytes
+    }
+
+    inline fun <T> useFloatArrays(count: Int, size: Int, func: (Array<FloatArray>) -> T): T {
+        val arrays = Array(count) { borrowFloatArray(size) }
+        try {
+            return func(arrays)
+        } finally {
+            for (array in arrays) {
+                release(array)
+            }
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        floatArrays.clear()
+        pooledBytes = 0
+    }
+
+    private fun floatBytes(size: Int): Long = size * 4L
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 2L shl 30
+
+        val shared = ImageBufferPool()
+    }
+}
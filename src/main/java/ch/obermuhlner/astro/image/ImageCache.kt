@@ -0,0 +1,110 @@
+package ch.obermuhlner.astro.image
+
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+class ImageCache(
+        val directory: File = defaultDirectory(),
+        val maxBytes: Long = DEFAULT_MAX_BYTES,
+        val sampleType: MemoryMappedFileDoubleImage.SampleType = MemoryMappedFileDoubleImage.SampleType.Float32) {
+
+    @Throws(IOException::class)
+    fun read(file: File, quality: ImageQuality = ImageQuality.High): DoubleImage {
+        val cacheFile = File(directory, cacheKey(file, quality) + CACHE_SUFFIX)
+
+        if (cacheFile.exists()) {
+            try {
+                val image = MemoryMappedFileDoubleImage.fromFile(cacheFile)
+                cacheFile.setLastModified(System.currentTimeMillis())
+                return image
+            } catch (ex: IOException) {
+                // incompatible or damaged cache entry - decode again
+                cacheFile.delete()
+            }
+        }
+
+        val image = ImageReader.read(file, quality, true)
+        if (store(image, cacheFile)) {
+            try {
+                return MemoryMappedFileDoubleImage.fromFile(cacheFile)
+            } catch (ex: IOException) {
+                // fall through and keep the decoded image in memory
+            }
+        }
+        return image
+    }
+
+    @Synchronized
+    fun clear() {
+        for (cacheFile in cacheFiles()) {
+            cacheFile.delete()
+        }
+    }
+
+    fun totalBytes(): Long {
+        return cacheFiles().sumOf { it.length() }
+    }
+
+    private fun store(image: DoubleImage, cacheFile: File): Boolean {
+        val imageBytes = HEADER_BYTES + image.width.toLong() * image.height * 3 * sampleType.bytes
+        if (imageBytes > maxBytes) {
+            return false
+        }
+
+        directory.mkdirs()
+        evict(maxBytes - imageBytes)
+
+        // unique temp file per caller, so concurrent reads of the same image do not write into each other
+        var tempFile: File? = null
+        try {
+            tempFile = Files.createTempFile(directory.toPath(), cacheFile.name, TEMP_SUFFIX).toFile()
+            MemoryMappedFileDoubleImage.fromImage(image, tempFile, sampleType).close()
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE)
+            return true
+        } catch (ex: IOException) {
+            // caching is best effort only
+            tempFile?.delete()
+            return false
+        }
+    }
+
+    @Synchronized
+    private fun evict(targetBytes: Long) {
+        val cacheFiles = cacheFiles().sortedBy { it.lastModified() }
+        var totalBytes = cacheFiles.sumOf { it.length() }
+        for (cacheFile in cacheFiles) {
+            if (totalBytes <= targetBytes) {
+                break
+            }
+            val length = cacheFile.length()
+            if (cacheFile.delete()) {
+                totalBytes -= length
+            }
+        }
+    }
+
+    private fun cacheFiles(): List<File> {
+        return directory.listFiles { file -> file.isFile && file.name.endsWith(CACHE_SUFFIX) }?.toList() ?: emptyList()
+    }
+
+    private fun cacheKey(file: File, quality: ImageQuality): String {
+        val key = "${file.canonicalPath}|${file.length()}|${file.lastModified()}|$quality|$sampleType"
+        val digest = MessageDigest.getInstance("SHA-256").digest(key.toByteArray(Charsets.UTF_8))
+        return digest.joinToString("") { String.format("%02x", it) }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 32L shl 30
+
+        private const val CACHE_SUFFIX = ".mmi"
+        private const val TEMP_SUFFIX = ".tmp"
+        private const val HEADER_BYTES = 32
+
+        fun defaultDirectory(): File {
+            return File(System.getProperty("user.home", "."), ".ez-astrophotography/cache")
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ch.obermuhlner.astro.image
 
+import ch.obermuhlner.astro.image.color.ColorModel
 import mil.nga.tiff.FieldType
 import mil.nga.tiff.FileDirectory
 import mil.nga.tiff.Rasters
@@ -7,6 +8,7 @@ import mil.nga.tiff.TIFFImage
 import mil.nga.tiff.util.TiffConstants
 import java.awt.image.BufferedImage
 import java.util.*
+import kotlin.math.max
 
 object ImageCreator {
     fun create(width: Int, height: Int, quality: ImageQuality): DoubleImage {
@@ -15,25 +17,60 @@ object ImageCreator {
         } else AwtBufferedDoubleImage(BufferedImage(width, height, BufferedImage.TYPE_INT_RGB))
     }
 
-    fun createTiff(width: Int, height: Int): DoubleImage {
-        val samplesPerPixel = 3
-        val fieldType = FieldType.FLOAT
-        val bitsPerSample = fieldType.bits
-        val rasters = Rasters(width, height, samplesPerPixel, fieldType)
-        val rowsPerStrip = rasters.calculateRowsPerStrip(TiffConstants.PLANAR_CONFIGURATION_CHUNKY)
+    // images that would take a large part of the heap as double arrays are stored off heap (as floats)
+    fun create(width: Int, height: Int, colorModel: ColorModel = ColorModel.RGB): DoubleImage {
+        val samples = width.toLong() * height * 3
+        return if (samples > MAX_ARRAY_SIZE || samples * java.lang.Double.BYTES > heapBudget()) {
+            createOffHeap(width, height, colorModel)
+        } else ArrayDoubleImage(width, height, colorModel)
+    }
+
+    private fun heapBudget(): Long {
+        return (Runtime.getRuntime().maxMemory() * HEAP_BUDGET_FRACTION).toLong()
+    }
+
+    fun createOffHeap(width: Int, height: Int, colorModel: ColorModel = ColorModel.RGB): DoubleImage {
+        return OffHeapDoubleImage(width, height, colorModel)
+    }
+
+    fun createFloatPlanar(width: Int, height: Int, colorModel: ColorModel = ColorModel.RGB): DoubleImage {
+        return FloatPlanarDoubleImage(width, height, colorModel)
+    }
+
+    fun createTiff(width: Int, height: Int, compression: TiffCompression = TiffCompression.None): DoubleImage {
+        val directory = createTiffDirectory(width, height, compression)
+        directory.writeRasters = Rasters(width, height, TIFF_SAMPLES_PER_PIXEL, TIFF_FIELD_TYPE)
+        val tiffImage = TIFFImage()
+        tiffImage.add(directory)
+        return TiffDoubleImage(tiffImage, false)
+    }
+
+    fun createTiffDirectory(width: Int, height: Int, compression: TiffCompression = TiffCompression.None): FileDirectory {
+        val bitsPerSample = TIFF_FIELD_TYPE.bits
+        val maxBytesPerStrip = if (compression.method == TiffCompression.Method.None) TiffConstants.DEFAULT_MAX_BYTES_PER_STRIP else COMPRESSED_MAX_BYTES_PER_STRIP
+        val rowsPerStrip = max(1, maxBytesPerStrip / (TIFF_SAMPLES_PER_PIXEL * TIFF_FIELD_TYPE.bytes * width))
         val directory = FileDirectory()
         directory.setImageWidth(width)
         directory.setImageHeight(height)
         directory.bitsPerSample = listOf(bitsPerSample, bitsPerSample, bitsPerSample)
-        directory.compression = TiffConstants.COMPRESSION_NO
+        directory.compression = compression.method.compression
+        if (compression.predictor != TiffCompression.Predictor.None) {
+            directory.predictor = compression.predictor.predictor
+        }
+        if (compression.method == TiffCompression.Method.Deflate) {
+            directory.writeCompressionLevel = compression.level
+        }
         directory.photometricInterpretation = TiffConstants.PHOTOMETRIC_INTERPRETATION_RGB
-        directory.samplesPerPixel = samplesPerPixel
+        directory.samplesPerPixel = TIFF_SAMPLES_PER_PIXEL
         directory.setRowsPerStrip(rowsPerStrip)
         directory.planarConfiguration = TiffConstants.PLANAR_CONFIGURATION_CHUNKY
         directory.setSampleFormat(TiffConstants.SAMPLE_FORMAT_FLOAT)
-        directory.writeRasters = rasters
-        val tiffImage = TIFFImage()
-        tiffImage.add(directory)
-        return TiffDoubleImage(tiffImage, false)
+        return directory
     }
+
+    private const val MAX_ARRAY_SIZE = Int.MAX_VALUE - 8
+    private const val HEAP_BUDGET_FRACTION = 0.25
+    private const val TIFF_SAMPLES_PER_PIXEL = 3
+    private const val COMPRESSED_MAX_BYTES_PER_STRIP = 64 * 1024
+    private val TIFF_FIELD_TYPE = FieldType.FLOAT
 }
\ No newline at end of file
@@ -8,10 +8,10 @@ import javax.imageio.ImageIO
 object ImageReader {
     @JvmOverloads
     @Throws(IOException::class)
-    fun read(file: File, quality: ImageQuality = ImageQuality.High): DoubleImage {
+    fun read(file: File, quality: ImageQuality = ImageQuality.High, lazyDecode: Boolean = false): DoubleImage {
         if (quality == ImageQuality.High) {
             try {
-                return TiffDoubleImage(TiffReader.readTiff(file), true)
+                return TiffDoubleImage(TiffReader.readTiffMapped(file), true, lazyDecode)
             } catch (ex: Exception) {
                 // ignore
             }
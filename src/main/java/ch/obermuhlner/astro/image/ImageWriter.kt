@@ -1,6 +1,8 @@
 package ch.obermuhlner.astro.image
 
 import ch.obermuhlner.astro.image.color.ColorModel
+import mil.nga.tiff.StripSource
+import mil.nga.tiff.TIFFImage
 import mil.nga.tiff.TiffWriter
 import java.awt.image.BufferedImage
 import java.io.*
@@ -53,4 +55,36 @@ object ImageWriter {
         val bufferedDoubleImage = image as AwtBufferedDoubleImage
         ImageIO.write(bufferedDoubleImage.image, format.name, output)
     }
+
+    @Throws(IOException::class)
+    fun writeTiff(image: DoubleImage, output: File, compression: TiffCompression? = null, scale: Double = 1.0) {
+        if (image is TiffDoubleImage && compression == null && scale == 1.0) {
+            TiffWriter.writeTiff(output, image.tiffImage)
+            return
+        }
+
+        val directory = ImageCreator.createTiffDirectory(image.width, image.height, compression ?: TiffCompression.None)
+        var samples = DoubleArray(0)
+        directory.writeStripSource = StripSource { y, rasters ->
+            val samplesPerPixel = rasters.samplesPerPixel
+            val rowSamples = rasters.width * samplesPerPixel
+            if (samples.size != rowSamples * rasters.height) {
+                samples = DoubleArray(rowSamples * rasters.height)
+            }
+            image.getRegion(0, y, rasters.width, rasters.height, ColorModel.RGB, samples)
+            if (scale != 1.0) {
+                for (i in samples.indices) {
+                    samples[i] *= scale
+                }
+            }
+            for (row in 0 until rasters.height) {
+                for (sampleIndex in 0 until samplesPerPixel) {
+                    rasters.writeSamples(sampleIndex, 0, row, rasters.width, samples, row * rowSamples + sampleIndex, samplesPerPixel)
+                }
+            }
+        }
+        val tiffImage = TIFFImage()
+        tiffImage.add(directory)
+        TiffWriter.writeTiff(output, tiffImage)
+    }
 }
\ No newline at end of file
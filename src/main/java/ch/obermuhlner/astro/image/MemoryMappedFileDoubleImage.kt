@@ -1,78 +1,254 @@
 package ch.obermuhlner.astro.image
 
+import java.io.Closeable
 import java.io.File
-import java.nio.ShortBuffer
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
 import java.nio.channels.FileChannel
-import java.nio.file.Files
 import java.nio.file.StandardOpenOption
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.roundToInt
 
-class MemoryMappedFileDoubleImage(override val width: Int, override val height: Int, val file: File) : DoubleImage {
+class MemoryMappedFileDoubleImage private constructor(override val width: Int, override val height: Int, val sampleType: SampleType, val file: File, private val channel: FileChannel) : DoubleImage, Closeable {
+
+    enum class SampleType(val id: Int, val bytes: Int) {
+        UInt16(1, 2),
+        Float16(2, 2),
+        Float32(3, 4)
+    }
 
     private val channelsPerPixel = 3
 
-    private val shortBuffer: ShortBuffer
+    private val rowBytes = width * channelsPerPixel * sampleType.bytes
+    private val rowsPerSegment: Int = max(1L, min(height.toLong(), MAX_SEGMENT_BYTES / max(1, rowBytes))).toInt()
+    private val segments: Array<MappedByteBuffer>
 
     init {
-        val n = width * height
-        val bufferSize = n.toLong() * 2 * channelsPerPixel + 2 * 2
-        val channel: FileChannel = Files.newByteChannel(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) as FileChannel
-        val buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize)
-        shortBuffer = buffer.asShortBuffer()
-
-        shortBuffer.put(width.toShort())
-        shortBuffer.put(height.toShort())
+        if (width.toLong() * channelsPerPixel * sampleType.bytes > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image row too large: $width pixels")
+        }
+        val segmentCount = (height + rowsPerSegment - 1) / rowsPerSegment
+        segments = Array(segmentCount) { i ->
+            val position = HEADER_SIZE + i.toLong() * rowsPerSegment * rowBytes
+            val rows = min(rowsPerSegment, height - i * rowsPerSegment)
+            channel.map(FileChannel.MapMode.READ_WRITE, position, rows.toLong() * rowBytes)
+        }
+    }
+
+    constructor(width: Int, height: Int, file: File, sampleType: SampleType = SampleType.Float32)
+            : this(width, height, sampleType, file, createChannel(file, HEADER_SIZE + width.toLong() * height * 3 * sampleType.bytes)) {
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+        header.putInt(MAGIC)
+        header.putInt(VERSION)
+        header.putInt(width)
+        header.putInt(height)
+        header.putInt(sampleType.id)
+        header.rewind()
+        channel.write(header, 0)
     }
 
     override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
-        val index = (x + y * width) * channelsPerPixel + 2
-        shortBuffer.position(index)
-        color[0] = toDouble(shortBuffer.get())
-        color[1] = toDouble(shortBuffer.get())
-        color[2] = toDouble(shortBuffer.get())
+        val segment = segments[y / rowsPerSegment]
+        val index = (y % rowsPerSegment) * rowBytes + x * channelsPerPixel * sampleType.bytes
+        color[0] = readSample(segment, index)
+        color[1] = readSample(segment, index + sampleType.bytes)
+        color[2] = readSample(segment, index + sampleType.bytes * 2)
         return color
     }
 
     override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
-        val index = (x + y * width) * channelsPerPixel + 2
-        shortBuffer.position(index)
-        shortBuffer.put(toShort(color[0]))
-        shortBuffer.put(toShort(color[1]))
-        shortBuffer.put(toShort(color[2]))
+        val segment = segments[y / rowsPerSegment]
+        val index = (y % rowsPerSegment) * rowBytes + x * channelsPerPixel * sampleType.bytes
+        writeSample(segment, index, color[0])
+        writeSample(segment, index + sampleType.bytes, color[1])
+        writeSample(segment, index + sampleType.bytes * 2, color[2])
     }
 
-    private fun toDouble(value: Short): Double {
-        return value / Short.MAX_VALUE.toDouble()
-    }
-    
-    private fun toShort(value: Double): Short {
-        return when {
-            value <= 0 -> {
-                0
-            }
-            value >= 1.0 -> {
-                Short.MAX_VALUE
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        val count = width * channelsPerPixel
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            val segment = segments[yy / rowsPerSegment]
+            var index = (yy % rowsPerSegment) * rowBytes + x * channelsPerPixel * sampleType.bytes
+            when (sampleType) {
+                SampleType.UInt16 -> for (i in 0 until count) {
+                    samples[targetIndex++] = uint16ToDouble(segment.getShort(index))
+                    index += 2
+                }
+                SampleType.Float16 -> for (i in 0 until count) {
+                    samples[targetIndex++] = float16ToFloat(segment.getShort(index).toInt()).toDouble()
+                    index += 2
+                }
+                SampleType.Float32 -> for (i in 0 until count) {
+                    samples[targetIndex++] = segment.getFloat(index).toDouble()
+                    index += 4
+                }
             }
-            else -> {
-                (value * Short.MAX_VALUE).toInt().toShort()
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        val count = width * channelsPerPixel
+        var sourceIndex = offset
+        for (yy in y until y + height) {
+            val segment = segments[yy / rowsPerSegment]
+            var index = (yy % rowsPerSegment) * rowBytes + x * channelsPerPixel * sampleType.bytes
+            when (sampleType) {
+                SampleType.UInt16 -> for (i in 0 until count) {
+                    segment.putShort(index, doubleToUInt16(samples[sourceIndex++]))
+                    index += 2
+                }
+                SampleType.Float16 -> for (i in 0 until count) {
+                    segment.putShort(index, floatToFloat16(samples[sourceIndex++].toFloat()).toShort())
+                    index += 2
+                }
+                SampleType.Float32 -> for (i in 0 until count) {
+                    segment.putFloat(index, samples[sourceIndex++].toFloat())
+                    index += 4
+                }
             }
         }
     }
 
+    fun force() {
+        for (segment in segments) {
+            segment.force()
+        }
+    }
+
+    override fun close() {
+        if (channel.isOpen) {
+            force()
+            channel.close()
+        }
+    }
+
+    private fun readSample(buffer: ByteBuffer, index: Int): Double {
+        return when (sampleType) {
+            SampleType.UInt16 -> uint16ToDouble(buffer.getShort(index))
+            SampleType.Float16 -> float16ToFloat(buffer.getShort(index).toInt()).toDouble()
+            SampleType.Float32 -> buffer.getFloat(index).toDouble()
+        }
+    }
+
+    private fun writeSample(buffer: ByteBuffer, index: Int, value: Double) {
+        when (sampleType) {
+            SampleType.UInt16 -> buffer.putShort(index, doubleToUInt16(value))
+            SampleType.Float16 -> buffer.putShort(index, floatToFloat16(value.toFloat()).toShort())
+            SampleType.Float32 -> buffer.putFloat(index, value.toFloat())
+        }
+    }
+
     companion object {
-        fun fromFile(file: File): MemoryMappedFileDoubleImage {
-            val channel: FileChannel = Files.newByteChannel(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ) as FileChannel
-            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2 * 2)
-            val shortBuffer = buffer.asShortBuffer()
-            val width = shortBuffer.get().toInt()
-            val height = shortBuffer.get().toInt()
+        private const val MAGIC = 0x455A4D49 // "EZMI"
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 32
+        private const val MAX_SEGMENT_BYTES = 1L shl 30
 
-            return MemoryMappedFileDoubleImage(width, height, file)
+        @Throws(IOException::class)
+        fun fromFile(file: File): MemoryMappedFileDoubleImage {
+            val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+            try {
+                val header = ByteBuffer.allocate(HEADER_SIZE)
+                channel.read(header, 0)
+                header.flip()
+                if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                    throw IOException("Not a memory mapped image file: $file")
+                }
+                val version = header.getInt()
+                if (version != VERSION) {
+                    throw IOException("Incompatible memory mapped image version: $version")
+                }
+                val width = header.getInt()
+                val height = header.getInt()
+                val sampleTypeId = header.getInt()
+                val sampleType = SampleType.values().firstOrNull { it.id == sampleTypeId }
+                        ?: throw IOException("Unknown memory mapped image sample type: $sampleTypeId")
+                if (channel.size() < HEADER_SIZE + width.toLong() * height * 3 * sampleType.bytes) {
+                    throw IOException("Truncated memory mapped image file: $file")
+                }
+                return MemoryMappedFileDoubleImage(width, height, sampleType, file, channel)
+            } catch (ex: IOException) {
+                channel.close()
+                throw ex
+            }
         }
 
-        fun fromImage(image: DoubleImage, file: File): MemoryMappedFileDoubleImage {
-            val mmiImage = MemoryMappedFileDoubleImage(image.width, image.height, file)
+        fun fromImage(image: DoubleImage, file: File, sampleType: SampleType = SampleType.Float32): MemoryMappedFileDoubleImage {
+            val mmiImage = MemoryMappedFileDoubleImage(image.width, image.height, file, sampleType)
             mmiImage.setPixels(image)
+            mmiImage.force()
             return mmiImage
         }
+
+        private fun createChannel(file: File, size: Long): FileChannel {
+            val channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            if (channel.size() > size) {
+                channel.truncate(size)
+            }
+            return channel
+        }
+
+        private fun uint16ToDouble(value: Short): Double {
+            return (value.toInt() and 0xffff) / 65535.0
+        }
+
+        private fun doubleToUInt16(value: Double): Short {
+            return when {
+                value <= 0.0 -> 0
+                value >= 1.0 -> 0xffff.toShort()
+                else -> (value * 65535.0).roundToInt().toShort()
+            }
+        }
+
+        private fun float16ToFloat(half: Int): Float {
+            val sign = (half and 0x8000) shl 16
+            val exponent = (half ushr 10) and 0x1f
+            val mantissa = half and 0x3ff
+            return when (exponent) {
+                0 -> {
+                    val value = mantissa * 5.9604645E-8f // 2^-24
+                    if (sign != 0) -value else value
+                }
+                0x1f -> java.lang.Float.intBitsToFloat(sign or 0x7f800000 or (mantissa shl 13))
+                else -> java.lang.Float.intBitsToFloat(sign or ((exponent + 112) shl 23) or (mantissa shl 13))
+            }
+        }
+
+        private fun floatToFloat16(value: Float): Int {
+            val bits = java.lang.Float.floatToRawIntBits(value)
+            val sign = (bits ushr 16) and 0x8000
+            val floatExponent = (bits ushr 23) and 0xff
+            val mantissa = bits and 0x7fffff
+            if (floatExponent == 0xff) {
+                return sign or 0x7c00 or (if (mantissa != 0) 0x200 else 0)
+            }
+            val exponent = floatExponent - 127 + 15
+            if (exponent >= 0x1f) {
+                return sign or 0x7c00
+            }
+            if (exponent <= 0) {
+                if (exponent < -10) {
+                    return sign
+                }
+                val fullMantissa = mantissa or 0x800000
+                val shift = 14 - exponent
+                var half = fullMantissa ushr shift
+                val roundBit = 1 shl (shift - 1)
+                if ((fullMantissa and roundBit) != 0 && (fullMantissa and (3 * roundBit - 1)) != 0) {
+                    half++
+                }
+                return sign or half
+            }
+            var half = (exponent shl 10) or (mantissa ushr 13)
+            val roundBits = mantissa and 0x1fff
+            if (roundBits > 0x1000 || (roundBits == 0x1000 && (half and 1) != 0)) {
+                half++
+            }
+            return sign or half
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package ch.obermuhlner.astro.image
+
+import ch.obermuhlner.astro.image.color.ColorModel
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import kotlin.math.max
+import kotlin.math.min
+
+class OffHeapDoubleImage(override val width: Int, override val height: Int, override val colorModel: ColorModel = ColorModel.RGB) : DoubleImage {
+    init {
+        // validated before the segment layout is derived from the size
+        if (width <= 0 || height <= 0) {
+            throw IllegalArgumentException("Invalid image size: $width x $height")
+        }
+        if (width.toLong() * SAMPLES_PER_PIXEL * BYTES_PER_SAMPLE > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image row too large: $width pixels")
+        }
+    }
+
+    private val rowSamples = width * SAMPLES_PER_PIXEL
+    private val rowsPerSegment: Int = max(1L, min(height.toLong(), MAX_SEGMENT_BYTES / (rowSamples.toLong() * BYTES_PER_SAMPLE))).toInt()
+    private val segments: Array<FloatBuffer>
+
+    init {
+        val segmentCount = (height + rowsPerSegment - 1) / rowsPerSegment
+        segments = Array(segmentCount) { i ->
+            val rows = min(rowsPerSegment, height - i * rowsPerSegment)
+            ByteBuffer.allocateDirect(rows * rowSamples * BYTES_PER_SAMPLE).order(ByteOrder.nativeOrder()).asFloatBuffer()
+        }
+    }
+
+    override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
+        val segment = segments[y / rowsPerSegment]
+        val index = (y % rowsPerSegment) * rowSamples + x * SAMPLES_PER_PIXEL
+        color[0] = segment.get(index + 0).toDouble()
+        color[1] = segment.get(index + 1).toDouble()
+        color[2] = segment.get(index + 2).toDouble()
+        return color
+    }
+
+    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
+        val segment = segments[y / rowsPerSegment]
+        val index = (y % rowsPerSegment) * rowSamples + x * SAMPLES_PER_PIXEL
+        segment.put(index + 0, color[0].toFloat())
+        segment.put(index + 1, color[1].toFloat())
+        segment.put(index + 2, color[2].toFloat())
+    }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        val length = width * SAMPLES_PER_PIXEL
+        var targetIndex = offset
+        for (yy in y until y + height) {
+            val segment = segments[yy / rowsPerSegment]
+            val index = (yy % rowsPerSegment) * rowSamples + x * SAMPLES_PER_PIXEL
+            for (i in index until index + length) {
+                samples[targetIndex++] = segment.get(i).toDouble()
+            }
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        val length = width * SAMPLES_PER_PIXEL
+        var sourceIndex = offset
+        for (yy in y until y + height) {
+            val segment = segments[yy / rowsPerSegment]
+            val index = (yy % rowsPerSegment) * rowSamples + x * SAMPLES_PER_PIXEL
+            for (i in index until index + length) {
+                segment.put(i, samples[sourceIndex++].toFloat())
+            }
+        }
+    }
+
+    companion object {
+        private const val SAMPLES_PER_PIXEL = 3
+        private const val BYTES_PER_SAMPLE = 4
+        private const val MAX_SEGMENT_BYTES = 1L shl 30
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package ch.obermuhlner.astro.image
+
+import java.util.stream.IntStream
+import kotlin.math.min
+
+object Parallel {
+    fun forEachBand(count: Int, bandSize: Int, func: (start: Int, end: Int) -> Unit) {
+        val bandCount = (count + bandSize - 1) / bandSize
+        if (bandCount <= 1) {
+            if (count > 0) {
+                func(0, count)
+            }
+            return
+        }
+        IntStream.range(0, bandCount).parallel().forEach { band ->
+            val start = band * bandSize
+            func(start, min(count, start + bandSize))
+        }
+    }
+
+    fun forEachTile(width: Int, height: Int, tileWidth: Int, tileHeight: Int, func: (x: Int, y: Int, tileWidth: Int, tileHeight: Int) -> Unit) {
+        val tilesX = (width + tileWidth - 1) / tileWidth
+        val tilesY = (height + tileHeight - 1) / tileHeight
+        forEachBand(tilesX * tilesY, 1) { tile, _ ->
+            val x = tile % tilesX * tileWidth
+            val y = tile / tilesX * tileHeight
+            func(x, y, min(tileWidth, width - x), min(tileHeight, height - y))
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ch.obermuhlner.astro.image
+
+import java.util.ArrayDeque
+
+// Per thread scratch arrays that grow as needed.
+// Nested use on the same thread (for example a task stolen by a joining fork/join worker) gets its own set of arrays.
+class ScratchArrays(private val count: Int) {
+    private val freeArrays = ThreadLocal.withInitial { ArrayDeque<Array<DoubleArray>>() }
+
+    inline fun <T> use(func: (Scratch) -> T): T {
+        val scratch = borrow()
+        try {
+            return func(scratch)
+        } finally {
+            release(scratch)
+        }
+    }
+
+    fun borrow(): Scratch {
+        return freeArrays.get().pollLast()?.let { Scratch(it) } ?: Scratch(Array(count) { DoubleArray(0) })
+    }
+
+    fun release(scratch: Scratch) {
+        freeArrays.get().addLast(scratch.arrays)
+    }
+
+    class Scratch(val arrays: Array<DoubleArray>) {
+        // the content of the returned array is undefined
+        fun array(index: Int, size: Int): DoubleArray {
+            if (arrays[index].size < size) {
+                arrays[index] = DoubleArray(size)
+            }
+            return arrays[index]
+        }
+    }
+}
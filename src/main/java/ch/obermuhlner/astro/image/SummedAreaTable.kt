@@ -0,0 +1,153 @@
+package ch.obermuhlner.astro.image
+
+import ch.obermuhlner.astro.image.color.ColorModel
+import kotlin.math.max
+import kotlin.math.min
+
+// Integral image of the three samples (and optionally of their squares) with double precision accumulation,
+// so that sums, averages and variances over any rectangle cost O(1).
+class SummedAreaTable(image: DoubleImage, val colorModel: ColorModel = ColorModel.RGB, squares: Boolean = false) {
+    val width: Int = image.width
+    val height: Int = image.height
+
+    private val stride = width + 1
+    private val sums: Array<DoubleArray>
+    private val squareSums: Array<DoubleArray>?
+
+    init {
+        if ((width + 1).toLong() * (height + 1) > Int.MAX_VALUE) {
+            throw IllegalArgumentException("Image too large for summed area table: $width x $height")
+        }
+        sums = Array(3) { DoubleArray(stride * (height + 1)) }
+        squareSums = if (squares) Array(3) { DoubleArray(stride * (height + 1)) } else null
+
+        val samples = DoubleArray(width * 3)
+        for (y in 0 until height) {
+            image.getRow(y, colorModel, samples)
+            val rowIndex = (y + 1) * stride
+            for (channel in 0 until 3) {
+                val table = sums[channel]
+                val squareTable = squareSums?.get(channel)
+                var rowSum = 0.0
+                var rowSquareSum = 0.0
+                for (x in 0 until width) {
+                    val value = samples[x * 3 + channel]
+                    rowSum += value
+                    table[rowIndex + x + 1] = table[rowIndex - stride + x + 1] + rowSum
+                    if (squareTable != null) {
+                        rowSquareSum += value * value
+                        squareTable[rowIndex + x + 1] = squareTable[rowIndex - stride + x + 1] + rowSquareSum
+                    }
+                }
+            }
+        }
+    }
+
+    // number of pixels of the rectangle that are inside the image
+    fun count(x: Int, y: Int, width: Int, height: Int): Int {
+        val x0 = max(0, x)
+        val y0 = max(0, y)
+        val x1 = min(this.width, x + width)
+        val y1 = min(this.height, y + height)
+        return if (x1 > x0 && y1 > y0) (x1 - x0) * (y1 - y0) else 0
+    }
+
+    // sum over the pixels of the rectangle that are inside the image
+    fun sum(x: Int, y: Int, width: Int, height: Int, color: DoubleArray = DoubleArray(3)): DoubleArray {
+        return sum(sums, x, y, width, height, color)
+    }
+
+    fun squareSum(x: Int, y: Int, width: Int, height: Int, color: DoubleArray = DoubleArray(3)): DoubleArray {
+        return sum(squareSums ?: throw IllegalStateException("Summed area table without squares"), x, y, width, height, color)
+    }
+
+    fun averagePixel(x: Int, y: Int, width: Int, height: Int, color: DoubleArray = DoubleArray(3)): DoubleArray {
+        val n = count(x, y, width, height)
+        sum(x, y, width, height, color)
+        color[0] /= n
+        color[1] /= n
+        color[2] /= n
+        return color
+    }
+
+    fun variancePixel(x: Int, y: Int, width: Int, height: Int, color: DoubleArray = DoubleArray(3)): DoubleArray {
+        val n = count(x, y, width, height)
+        val squares = squareSum(x, y, width, height)
+        sum(x, y, width, height, color)
+        for (channel in 0 until 3) {
+            val mean = color[channel] / n
+            color[channel] = max(0.0, squares[channel] / n - mean * mean)
+        }
+        return color
+    }
+
+    // sum over the rectangle where pixels outside of the image are replaced by the nearest edge pixel (same as DoubleImage.getPixel)
+    fun clampedSum(x: Int, y: Int, width: Int, height: Int, color: DoubleArray = DoubleArray(3)): DoubleArray {
+        color.fill(0.0, 0, 3)
+        if (width <= 0 || height <= 0 || this.width == 0 || this.height == 0) {
+            return color
+        }
+        val segmentsX = IntArray(9)
+        val segmentsY = IntArray(9)
+        val countX = clampedSegments(x, width, this.width, segmentsX)
+        val countY = clampedSegments(y, height, this.height, segmentsY)
+        for (i in 0 until countY) {
+            val segmentY = segmentsY[i * 3]
+            val segmentHeight = segmentsY[i * 3 + 1]
+            val weightY = segmentsY[i * 3 + 2]
+            for (j in 0 until countX) {
+                val segmentX = segmentsX[j * 3]
+                val segmentWidth = segmentsX[j * 3 + 1]
+                val weight = (weightY * segmentsX[j * 3 + 2]).toDouble()
+                for (channel in 0 until 3) {
+                    color[channel] += weight * rectangleSum(sums[channel], segmentX, segmentY, segmentWidth, segmentHeight)
+                }
+            }
+        }
+        return color
+    }
+
+    // splits [start, start + length) into at most 3 segments (start, length, weight) inside [0, size)
+    private fun clampedSegments(start: Int, length: Int, size: Int, segments: IntArray): Int {
+        val end = start + length
+        val insideStart = min(size - 1, max(0, start))
+        val insideEnd = max(insideStart + 1, min(size, end))
+        var count = 0
+        if (start < insideStart) {
+            count = addSegment(segments, count, 0, 1, min(end, 0) - start)
+        }
+        if (end > insideStart && start < insideEnd) {
+            val segmentStart = max(start, insideStart)
+            val segmentEnd = min(end, insideEnd)
+            count = addSegment(segments, count, segmentStart, segmentEnd - segmentStart, 1)
+        }
+        if (end > insideEnd) {
+            count = addSegment(segments, count, size - 1, 1, end - max(start, size))
+        }
+        return count
+    }
+
+    private fun addSegment(segments: IntArray, count: Int, start: Int, length: Int, weight: Int): Int {
+        segments[count * 3] = start
+        segments[count * 3 + 1] = length
+        segments[count * 3 + 2] = weight
+        return count + 1
+    }
+
+    private fun sum(tables: Array<DoubleArray>, x: Int, y: Int, width: Int, height: Int, color: DoubleArray): DoubleArray {
+        val x0 = max(0, x)
+        val y0 = max(0, y)
+        val x1 = min(this.width, x + width)
+        val y1 = min(this.height, y + height)
+        for (channel in 0 until 3) {
+            color[channel] = if (x1 > x0 && y1 > y0) rectangleSum(tables[channel], x0, y0, x1 - x0, y1 - y0) else 0.0
+        }
+        return color
+    }
+
+    private fun rectangleSum(table: DoubleArray, x: Int, y: Int, width: Int, height: Int): Double {
+        val index0 = y * stride + x
+        val index1 = (y + height) * stride + x
+        return table[index1 + width] - table[index1] - table[index0 + width] + table[index0]
+    }
+}
@@ -0,0 +1,29 @@
+package ch.obermuhlner.astro.image
+
+import mil.nga.tiff.util.TiffConstants
+import java.util.zip.Deflater
+
+data class TiffCompression(
+        val method: Method = Method.None,
+        val level: Int = Deflater.DEFAULT_COMPRESSION,
+        val predictor: Predictor = Predictor.None) {
+
+    enum class Method(val compression: Int) {
+        None(TiffConstants.COMPRESSION_NO),
+        Deflate(TiffConstants.COMPRESSION_DEFLATE),
+        LZW(TiffConstants.COMPRESSION_LZW),
+        PackBits(TiffConstants.COMPRESSION_PACKBITS)
+    }
+
+    enum class Predictor(val predictor: Int) {
+        None(TiffConstants.PREDICTOR_NO),
+        Horizontal(TiffConstants.PREDICTOR_HORIZONTAL),
+        FloatingPoint(TiffConstants.PREDICTOR_FLOATING_POINT)
+    }
+
+    companion object {
+        val None = TiffCompression()
+        val Deflate = TiffCompression(Method.Deflate, predictor = Predictor.FloatingPoint)
+        val LZW = TiffCompression(Method.LZW, predictor = Predictor.FloatingPoint)
+    }
+}
@@ -1,39 +1,125 @@
 package ch.obermuhlner.astro.image
 
 import ch.obermuhlner.astro.image.color.ColorModel
+import mil.nga.tiff.FieldType
+import mil.nga.tiff.ImageWindow
 import mil.nga.tiff.Rasters
 import mil.nga.tiff.TIFFImage
+import kotlin.math.max
+import kotlin.math.min
 
-class TiffDoubleImage(val tiffImage: TIFFImage, read: Boolean) : DoubleImage {
-    val image: Rasters = if (read) tiffImage.fileDirectories[0].readRasters() else tiffImage.fileDirectories[0].writeRasters
-    override val width: Int
-        get() = image.width
-    override val height: Int
-        get() = image.height
+class TiffDoubleImage(val tiffImage: TIFFImage, read: Boolean, lazyDecode: Boolean = false) : DoubleImage {
+    private val fileDirectory = tiffImage.fileDirectories[0]
+
+    @Volatile
+    private var fullBand: Band? = when {
+        !read -> Band(0, fileDirectory.writeRasters)
+        lazyDecode -> null
+        else -> Band(0, fileDirectory.readRasters())
+    }
+
+    @Volatile
+    private var band: Band? = null
+
+    val image: Rasters
+        get() = decodeAll().rasters
+    override val width: Int = fileDirectory.imageWidth.toInt()
+    override val height: Int = fileDirectory.imageHeight.toInt()
+
+    private val bandHeight: Int = run {
+        val rowsPerStrip = max(1L, min(fileDirectory.tileHeight.toLong(), height.toLong())).toInt()
+        (MIN_BAND_HEIGHT + rowsPerStrip - 1) / rowsPerStrip * rowsPerStrip
+    }
+
+    private val sampleScales = DoubleArray(SAMPLES_PER_PIXEL) { sampleIndex ->
+        when (fileDirectory.getFieldTypeForSample(sampleIndex)) {
+            FieldType.FLOAT, FieldType.DOUBLE -> 1.0
+            else -> 1.0 / 256.0
+        }
+    }
 
     override fun getNativePixel(x: Int, y: Int, color: DoubleArray): DoubleArray {
-        val pixel: Array<Number> = image.getPixel(x, y)
-        when {
-            pixel[0] is Double -> {
-                color[ColorModel.RGB.R] = pixel[0] as Double
-                color[ColorModel.RGB.G] = pixel[1] as Double
-                color[ColorModel.RGB.B] = pixel[2] as Double
-            }
-            pixel[0] is Float -> {
-                color[ColorModel.RGB.R] = (pixel[0] as Float).toDouble()
-                color[ColorModel.RGB.G] = (pixel[1] as Float).toDouble()
-                color[ColorModel.RGB.B] = (pixel[2] as Float).toDouble()
+        val band = band(y)
+        band.rasters.getPixelDouble(x, y - band.y, color)
+        color[ColorModel.RGB.R] *= sampleScales[ColorModel.RGB.R]
+        color[ColorModel.RGB.G] *= sampleScales[ColorModel.RGB.G]
+        color[ColorModel.RGB.B] *= sampleScales[ColorModel.RGB.B]
+        return color
+    }
+
+    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
+        image.setPixelFloat(x, y, color[ColorModel.RGB.R].toFloat(), color[ColorModel.RGB.G].toFloat(), color[ColorModel.RGB.B].toFloat())
+    }
+
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        var rowIndex = offset
+        for (yy in y until y + height) {
+            val band = band(yy)
+            for (sampleIndex in 0 until SAMPLES_PER_PIXEL) {
+                band.rasters.readSamples(sampleIndex, x, yy - band.y, width, samples, rowIndex + sampleIndex, SAMPLES_PER_PIXEL)
+                val scale = sampleScales[sampleIndex]
+                if (scale != 1.0) {
+                    var index = rowIndex + sampleIndex
+                    for (i in 0 until width) {
+                        samples[index] *= scale
+                        index += SAMPLES_PER_PIXEL
+                    }
+                }
             }
-            else -> {
-                color[ColorModel.RGB.R] = pixel[0].toDouble() / 256.0
-                color[ColorModel.RGB.G] = pixel[1].toDouble() / 256.0
-                color[ColorModel.RGB.B] = pixel[2].toDouble() / 256.0
+            rowIndex += width * SAMPLES_PER_PIXEL
+        }
+        return samples
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        val rasters = image
+        var rowIndex = offset
+        for (yy in y until y + height) {
+            for (sampleIndex in 0 until SAMPLES_PER_PIXEL) {
+                rasters.writeSamples(sampleIndex, x, yy, width, samples, rowIndex + sampleIndex, SAMPLES_PER_PIXEL)
             }
+            rowIndex += width * SAMPLES_PER_PIXEL
         }
-        return color
     }
 
-    override fun setNativePixel(x: Int, y: Int, color: DoubleArray) {
-        image.setPixel(x, y, arrayOf(color[ColorModel.RGB.R].toFloat(), color[ColorModel.RGB.G].toFloat(), color[ColorModel.RGB.B].toFloat()))
+    private fun band(y: Int): Band {
+        fullBand?.let { return it }
+        val current = band
+        if (current != null && current.contains(y)) {
+            return current
+        }
+        return decodeBand(y)
+    }
+
+    @Synchronized
+    private fun decodeBand(y: Int): Band {
+        fullBand?.let { return it }
+        val current = band
+        if (current != null && current.contains(y)) {
+            return current
+        }
+        val bandY = y / bandHeight * bandHeight
+        val bandRows = min(bandHeight, height - bandY)
+        val decoded = Band(bandY, fileDirectory.readRasters(ImageWindow(0, bandY, width, bandY + bandRows)))
+        band = decoded
+        return decoded
+    }
+
+    @Synchronized
+    private fun decodeAll(): Band {
+        fullBand?.let { return it }
+        val decoded = Band(0, fileDirectory.readRasters())
+        fullBand = decoded
+        band = null
+        return decoded
+    }
+
+    private class Band(val y: Int, val rasters: Rasters) {
+        fun contains(y: Int): Boolean = y >= this.y && y < this.y + rasters.height
+    }
+
+    companion object {
+        private const val SAMPLES_PER_PIXEL = 3
+        private const val MIN_BAND_HEIGHT = 64
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package ch.obermuhlner.astro.image
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import kotlin.math.min
+
+class TileScheduler(
+        val parallelism: Int = ForkJoinPool.getCommonPoolParallelism(),
+        val tileWidth: Int = DEFAULT_TILE_WIDTH,
+        val tileHeight: Int = DEFAULT_TILE_HEIGHT) {
+
+    init {
+        if (parallelism < 1 || tileWidth < 1 || tileHeight < 1) {
+            throw IllegalArgumentException("Invalid tile scheduler: parallelism=$parallelism tile=$tileWidth x $tileHeight")
+        }
+    }
+
+    private val pool: ForkJoinPool by lazy {
+        ForkJoinPool(parallelism)
+    }
+
+    fun forEachTile(x: Int, y: Int, width: Int, height: Int, func: (x: Int, y: Int, width: Int, height: Int) -> Unit) {
+        if (width <= 0 || height <= 0) {
+            return
+        }
+        if (parallelism == 1) {
+            for (tileY in y until y + height step tileHeight) {
+                for (tileX in x until x + width step tileWidth) {
+                    func(tileX, tileY, min(tileWidth, x + width - tileX), min(tileHeight, y + height - tileY))
+                }
+            }
+            return
+        }
+
+        val parallelTiles = Runnable {
+            Parallel.forEachTile(width, height, tileWidth, tileHeight) { tileX, tileY, tileWidth, tileHeight ->
+                func(x + tileX, y + tileY, tileWidth, tileHeight)
+            }
+        }
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            parallelTiles.run()
+        } else {
+            try {
+                pool.submit(parallelTiles).get()
+            } catch (ex: ExecutionException) {
+                throw ex.cause ?: ex
+            }
+        }
+    }
+
+    override fun toString(): String {
+        return "TileScheduler(parallelism=$parallelism, tile=$tileWidth x $tileHeight)"
+    }
+
+    companion object {
+        const val DEFAULT_TILE_WIDTH = 512
+        const val DEFAULT_TILE_HEIGHT = 32
+
+        val default = TileScheduler()
+        val sequential = TileScheduler(1)
+    }
+}
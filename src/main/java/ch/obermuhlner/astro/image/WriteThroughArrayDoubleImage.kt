@@ -19,4 +19,13 @@ class WriteThroughArrayDoubleImage(private val image: DoubleImage, colorModel: C
         image.setNativePixel(x, y, color)
     }
 
+    override fun getNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int): DoubleArray {
+        return arrayImage.getNativeRegion(x, y, width, height, samples, offset)
+    }
+
+    override fun setNativeRegion(x: Int, y: Int, width: Int, height: Int, samples: DoubleArray, offset: Int) {
+        arrayImage.setNativeRegion(x, y, width, height, samples, offset)
+        image.setNativeRegion(x, y, width, height, samples, offset)
+    }
+
 }
\ No newline at end of file
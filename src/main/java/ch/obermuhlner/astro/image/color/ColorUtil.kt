@@ -118,6 +118,77 @@ object ColorUtil {
         return rgb
     }
 
+    // Bulk conversion of interleaved pixels, gives the same results as converting every pixel individually.
+    fun convertRGBtoHSV(rgb: DoubleArray, rgbOffset: Int, hsv: DoubleArray, hsvOffset: Int, pixelCount: Int): DoubleArray {
+        var rgbIndex = rgbOffset
+        var hsvIndex = hsvOffset
+        for (i in 0 until pixelCount) {
+            val r = rgb[rgbIndex + ColorModel.RGB.R]
+            val g = rgb[rgbIndex + ColorModel.RGB.G]
+            val b = rgb[rgbIndex + ColorModel.RGB.B]
+            var cmax = if (r > g) r else g
+            if (b > cmax) cmax = b
+            var cmin = if (r < g) r else g
+            if (b < cmin) cmin = b
+            val chroma = cmax - cmin
+            val s = if (cmax != 0.0) chroma / cmax else 0.0
+            var h = 0.0
+            if (s != 0.0) {
+                // only the two channel distances needed for the hue sector are calculated
+                h = if (r == cmax) {
+                    (cmax - b) / chroma - (cmax - g) / chroma
+                } else if (g == cmax) {
+                    2.0 + (cmax - r) / chroma - (cmax - b) / chroma
+                } else {
+                    4.0 + (cmax - g) / chroma - (cmax - r) / chroma
+                }
+                h = h / 6.0
+                if (h < 0) h = h + 1.0
+            }
+            hsv[hsvIndex + ColorModel.HSV.H] = h * 360
+            hsv[hsvIndex + ColorModel.HSV.S] = s
+            hsv[hsvIndex + ColorModel.HSV.V] = cmax
+            rgbIndex += 3
+            hsvIndex += 3
+        }
+        return hsv
+    }
+
+    // Bulk conversion of interleaved pixels, gives the same results as converting every pixel individually.
+    fun convertHSVtoRGB(hsv: DoubleArray, hsvOffset: Int, rgb: DoubleArray, rgbOffset: Int, pixelCount: Int): DoubleArray {
+        // v, p, q, t and 0 of the current pixel, picked by the sector tables
+        val values = DoubleArray(5)
+        var hsvIndex = hsvOffset
+        var rgbIndex = rgbOffset
+        for (i in 0 until pixelCount) {
+            val h = hsv[hsvIndex + ColorModel.HSV.H]
+            val s = hsv[hsvIndex + ColorModel.HSV.S]
+            val v = hsv[hsvIndex + ColorModel.HSV.V]
+            if (h > -360.0 && h < 360.0) {
+                // same as (h % 360 + 360) % 360 without the floating point modulo
+                val shiftedHue = h + 360
+                val normalizedHue = if (shiftedHue < 360.0) shiftedHue else if (shiftedHue < 720.0) shiftedHue - 360 else 0.0
+                val hue = normalizedHue / 360
+                val hh = if (hue < 1.0) hue * 6.0 else (hue - floor(hue)) * 6.0
+                val sector = hh.toInt()
+                val f = hh - sector
+                values[0] = v
+                values[1] = v * (1.0 - s)
+                values[2] = v * (1.0 - s * f)
+                values[3] = v * (1.0 - s * (1.0 - f))
+                val sectorIndex = if (s == 0.0) SECTOR_GRAY else sector
+                rgb[rgbIndex + ColorModel.RGB.R] = values[SECTOR_R[sectorIndex]]
+                rgb[rgbIndex + ColorModel.RGB.G] = values[SECTOR_G[sectorIndex]]
+                rgb[rgbIndex + ColorModel.RGB.B] = values[SECTOR_B[sectorIndex]]
+            } else {
+                convertHSVtoRGB(h, s, v, rgb, rgbIndex)
+            }
+            hsvIndex += 3
+            rgbIndex += 3
+        }
+        return rgb
+    }
+
     fun sampleDistance(deltaSample: DoubleArray, colorModel: ColorModel, sampleIndex: Int, normalize: Boolean): Double {
         var delta = deltaSample[sampleIndex]
         if (colorModel === ColorModel.HSV && sampleIndex == ColorModel.HSV.H) {
@@ -146,7 +217,24 @@ object ColorUtil {
         return target
     }
 
+    fun convert(sourceModel: ColorModel, source: DoubleArray, sourceOffset: Int, targetModel: ColorModel, target: DoubleArray, targetOffset: Int, pixelCount: Int): DoubleArray {
+        if (sourceModel === ColorModel.RGB && targetModel === ColorModel.HSV) {
+            convertRGBtoHSV(source, sourceOffset, target, targetOffset, pixelCount)
+        } else if (sourceModel === ColorModel.HSV && targetModel === ColorModel.RGB) {
+            convertHSVtoRGB(source, sourceOffset, target, targetOffset, pixelCount)
+        } else if (source !== target || sourceOffset != targetOffset) {
+            System.arraycopy(source, sourceOffset, target, targetOffset, pixelCount * 3)
+        }
+        return target
+    }
+
     fun convertRGBtoLuminosity(rgb: DoubleArray): Double {
         return 0.2126 * rgb[ColorModel.RGB.R] + 0.7152 * rgb[ColorModel.RGB.G] + 0.0722 * rgb[ColorModel.RGB.G]
     }
+
+    // indices into (v, p, q, t, 0) for the hue sectors 0 to 5, sector 6 can only be reached by rounding and is black
+    private val SECTOR_R = intArrayOf(0, 2, 1, 1, 3, 0, 4, 0)
+    private val SECTOR_G = intArrayOf(3, 0, 0, 2, 1, 1, 4, 0)
+    private val SECTOR_B = intArrayOf(1, 1, 3, 0, 0, 2, 4, 0)
+    private const val SECTOR_GRAY = 7
 }
\ No newline at end of file
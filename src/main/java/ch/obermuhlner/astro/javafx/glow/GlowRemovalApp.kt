@@ -5,6 +5,7 @@ import ch.obermuhlner.astro.gradient.analysis.Histogram
 import ch.obermuhlner.astro.gradient.filter.GaussianBlurFilter
 import ch.obermuhlner.astro.gradient.filter.GradientInterpolationFilter
 import ch.obermuhlner.astro.gradient.filter.PseudoMedianFilter
+import ch.obermuhlner.astro.gradient.graph.ImageNode
 import ch.obermuhlner.astro.gradient.operation.ImageOperation
 import ch.obermuhlner.astro.gradient.operation.SubtractLinearImageOperation
 import ch.obermuhlner.astro.image.*
@@ -240,9 +241,11 @@ class GlowRemovalApp : Application() {
             }
             GlowStrategy.Blur -> {
                 val despeckleFilter = PseudoMedianFilter(despeckleRadiusProperty.get(), ColorModel.RGB)
-                val despeckled = despeckleFilter.filter(input)
                 val gaussianBlurFilter = GaussianBlurFilter(blurRadiusProperty.get(), ColorModel.RGB)
-                gaussianBlurFilter.filter(despeckled, gradient)
+                ImageNode.source(input)
+                        .filter(despeckleFilter)
+                        .filter(gaussianBlurFilter)
+                        .render(gradient)
             }
             GlowStrategy.Gradient -> {
                 gradientInterpolationFilter.filter(input, gradient)
@@ -648,38 +651,48 @@ class GlowRemovalApp : Application() {
         val inset = 2.0
         val chartWidth = canvasWidth - inset * 2
         val chartHeight = canvasHeight - inset * 2
-        val input: DoubleImage = ArrayDoubleImage(1, 1, ColorModel.RGB)
-        val gradient: DoubleImage = ArrayDoubleImage(1, 1, ColorModel.RGB)
-        val output: DoubleImage = ArrayDoubleImage(1, 1, ColorModel.RGB)
-        val color = DoubleArray(3)
+        val xStep = 1.0 / canvasWidth * 0.5
+
+        // evaluate the whole curve with a single operation on a strip of pixels
+        var sampleCount = 0
+        var x = 0.0
+        while (x <= 1.0) {
+            sampleCount++
+            x += xStep
+        }
+        val inputSamples = DoubleArray(sampleCount * 3)
+        val gradientSamples = DoubleArray(sampleCount * 3)
+        x = 0.0
+        for (i in 0 until sampleCount) {
+            inputSamples[i * 3 + ColorModel.RGB.R] = x
+            inputSamples[i * 3 + ColorModel.RGB.G] = x
+            inputSamples[i * 3 + ColorModel.RGB.B] = x
+            gradientSamples[i * 3 + ColorModel.RGB.R] = gradientColor.red
+            gradientSamples[i * 3 + ColorModel.RGB.G] = gradientColor.green
+            gradientSamples[i * 3 + ColorModel.RGB.B] = gradientColor.blue
+            x += xStep
+        }
+        val input: DoubleImage = ArrayDoubleImage(sampleCount, 1, ColorModel.RGB)
+        val gradient: DoubleImage = ArrayDoubleImage(sampleCount, 1, ColorModel.RGB)
+        val output: DoubleImage = ArrayDoubleImage(sampleCount, 1, ColorModel.RGB)
+        input.setRegion(0, 0, sampleCount, 1, ColorModel.RGB, inputSamples)
+        gradient.setRegion(0, 0, sampleCount, 1, ColorModel.RGB, gradientSamples)
+        subtractor.operation(input, gradient, output)
+        val outputSamples = output.getRegion(0, 0, sampleCount, 1, ColorModel.RGB, DoubleArray(sampleCount * 3))
 
         gc.fill = Color.LIGHTGRAY
         gc.fillRect(0.0, 0.0, canvasWidth, canvasHeight)
         gc.lineWidth = 2.0
 
-        val xStep = 1.0 / canvasWidth * 0.5
         var lastCanvasX = 0.0
         var lastCanvasYR = 0.0
         var lastCanvasYG = 0.0
         var lastCanvasYB = 0.0
-        var x = 0.0
-        while (x <= 1.0) {
-            color[ColorModel.RGB.R] = x
-            color[ColorModel.RGB.G] = x
-            color[ColorModel.RGB.B] = x
-            input.setPixel(0, 0, ColorModel.RGB, color)
-
-            color[ColorModel.RGB.R] = gradientColor.red
-            color[ColorModel.RGB.G] = gradientColor.green
-            color[ColorModel.RGB.B] = gradientColor.blue
-            gradient.setPixel(0, 0, ColorModel.RGB, color)
-
-            subtractor.operation(input, gradient, output)
-
-            output.getPixel(0, 0, ColorModel.RGB, color)
-            val yR = color[ColorModel.RGB.R]
-            val yG = color[ColorModel.RGB.G]
-            val yB = color[ColorModel.RGB.B]
+        x = 0.0
+        for (i in 0 until sampleCount) {
+            val yR = outputSamples[i * 3 + ColorModel.RGB.R]
+            val yG = outputSamples[i * 3 + ColorModel.RGB.G]
+            val yB = outputSamples[i * 3 + ColorModel.RGB.B]
 
             val canvasX = x * chartWidth + inset
             val canvasYR = canvasHeight - inset - yR * chartHeight
@@ -787,11 +800,12 @@ class GlowRemovalApp : Application() {
 
     private fun createEditor(): Node {
         zoomInputImage = WritableImage(ZOOM_WIDTH, ZOOM_HEIGHT)
-        zoomInputDoubleImage = if (ACCURATE_PREVIEW) {
+        // the color pickers read the zoom image repeatedly in HSV
+        zoomInputDoubleImage = CachedColorModelDoubleImage(if (ACCURATE_PREVIEW) {
             WriteThroughArrayDoubleImage(JavaFXWritableDoubleImage(zoomInputImage), ColorModel.RGB)
         } else {
             JavaFXWritableDoubleImage(zoomInputImage)
-        }
+        }, ColorModel.HSV)
         zoomInputImageView.image = zoomInputImage
         zoomOutputImage = WritableImage(ZOOM_WIDTH, ZOOM_HEIGHT)
         zoomOutputDoubleImage = WriteThroughArrayDoubleImage(JavaFXWritableDoubleImage(zoomOutputImage), ColorModel.RGB)
@@ -34,6 +34,7 @@ class ImageStackerApp : Application() {
     private val stackingFiles = FXCollections.observableArrayList<StackingFile>()
     private var selectedStackingFile: StackingFile? = null
     private var baseImage: DoubleImage? = null
+    private val imageCache = ImageCache()
 
     private val zoomBaseImage: WritableImage = WritableImage(ZOOM_WIDTH, ZOOM_HEIGHT)
     private val zoomBaseDoubleImage: DoubleImage = JavaFXWritableDoubleImage(zoomBaseImage)
@@ -172,9 +173,7 @@ class ImageStackerApp : Application() {
             val image = it.image
             if (image != null) {
                 val croppedImage = image.croppedImage(it.xProperty.get(), it.yProperty.get(), image.width, image.height, false)
-                val tiffImage = ImageCreator.createTiff(croppedImage.width, croppedImage.height)
-                tiffImage.setPixels(croppedImage)
-                ImageWriter.write(tiffImage, alignedFile)
+                ImageWriter.writeTiff(croppedImage, alignedFile)
             }
         }
     }
@@ -253,6 +252,7 @@ class ImageStackerApp : Application() {
                                 },
                                 menuitem("Remove") {
                                     onAction = EventHandler {
+                                        closeImage(tableRow.item)
                                         stackingFiles.remove(tableRow.item)
                                         updateZoom()
                                     }
@@ -484,6 +484,7 @@ class ImageStackerApp : Application() {
 
     private fun updateBaseStackingFile(stackingFile: StackingFile) {
         val image = loadImage(stackingFile.file)
+        closeImage(stackingFile)
         stackingFile.image = image
 
         updateBaseImage(image)
@@ -615,18 +616,21 @@ class ImageStackerApp : Application() {
         return color
     }
 
+    // images from the image cache are memory mapped and keep their file open until they are closed
+    private fun closeImage(stackingFile: StackingFile) {
+        val image = stackingFile.image
+        stackingFile.image = null
+        if (image is Closeable) {
+            image.close()
+        }
+    }
+
     @Throws(IOException::class)
     private fun loadImage(file: File): DoubleImage {
-        if (USE_MEMORY_MAPPED_IMAGES) {
-            val mmiFile = File(file.path + ".mmi")
-            return if (mmiFile.exists()) {
-                MemoryMappedFileDoubleImage.fromFile(mmiFile)
-            } else {
-                val image = ImageReader.read(file, ImageQuality.High)
-                MemoryMappedFileDoubleImage.fromImage(image, mmiFile)
-            }
+        return if (USE_IMAGE_CACHE) {
+            imageCache.read(file, ImageQuality.High)
         } else {
-            return ImageReader.read(file, ImageQuality.High)
+            ImageReader.read(file, ImageQuality.High)
         }
     }
 
@@ -654,6 +658,9 @@ class ImageStackerApp : Application() {
                 throw IOException("Incompatible EZ-Astrophotography version: $version")
             }
 
+            for (stackingFile in stackingFiles) {
+                closeImage(stackingFile)
+            }
             stackingFiles.clear()
             var stackingFilesLoading = true
             var stackingFilesIndex = 0
@@ -696,7 +703,7 @@ class ImageStackerApp : Application() {
 
         private const val EZ_ASTRO_STACKER_FILE_EXTENSION = ".ezastacker"
 
-        private const val USE_MEMORY_MAPPED_IMAGES = false
+        private const val USE_IMAGE_CACHE = true
         private const val KEEP_ALL_IMAGES_LOADED = false
 
         @JvmStatic
@@ -7,21 +7,28 @@ import java.util.*
 
 abstract class AbstractSortedStacker : Stacker {
     override fun stack(stackingImages: List<StackingImage>, output: DoubleImage) {
+        val width = output.width
+        val rows = Array(stackingImages.size) { DoubleArray(width * 3) }
+        val outputRow = DoubleArray(width * 3)
         val colors = Array(stackingImages.size) { i -> DoubleArray(4) }
         val rgb = DoubleArray(3)
 
         for (y in 0 until output.height) {
-            for (x in 0 until output.width) {
+            for (i in stackingImages.indices) {
+                val stackingImage = stackingImages[i]
+                stackingImage.image.getRegion(stackingImage.x, y + stackingImage.y, width, 1, ColorModel.RGB, rows[i])
+            }
+            for (x in 0 until width) {
                 for (i in stackingImages.indices) {
-                    val stackingImage = stackingImages[i]
-                    stackingImage.image.getPixel(x + stackingImage.x, y + stackingImage.y, ColorModel.RGB, colors[i])
+                    System.arraycopy(rows[i], x * 3, colors[i], 0, 3)
                     colors[i][3] = ColorUtil.convertRGBtoLuminosity(colors[i])
                 }
                 Arrays.sort(colors, Comparator.comparingDouble { c: DoubleArray -> c[3] })
 
                 stackSortedColors(colors, rgb)
-                output.setPixel(x, y, rgb)
+                System.arraycopy(rgb, 0, outputRow, x * 3, 3)
             }
+            output.setRow(y, ColorModel.RGB, outputRow)
         }
 
     }
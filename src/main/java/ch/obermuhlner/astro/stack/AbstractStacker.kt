@@ -1,18 +1,27 @@
 package ch.obermuhlner.astro.stack
 
 import ch.obermuhlner.astro.image.DoubleImage
+import ch.obermuhlner.astro.image.color.ColorModel
 
 abstract class AbstractStacker : Stacker {
     override fun stack(stackingImages: List<StackingImage>, output: DoubleImage) {
+        val width = output.width
+        val rows = Array(stackingImages.size) { DoubleArray(width * 3) }
+        val outputRow = DoubleArray(width * 3)
         val color = DoubleArray(3)
         for (y in 0 until output.height) {
-            for (x in 0 until output.width) {
-                stackPixel(x, y, stackingImages, color)
-                output.setPixel(x, y, color)
+            for (i in stackingImages.indices) {
+                val stackingImage = stackingImages[i]
+                stackingImage.image.getRegion(stackingImage.x, y + stackingImage.y, width, 1, ColorModel.RGB, rows[i])
             }
+            for (x in 0 until width) {
+                stackPixel(rows, x * 3, color)
+                System.arraycopy(color, 0, outputRow, x * 3, 3)
+            }
+            output.setRow(y, ColorModel.RGB, outputRow)
         }
 
     }
 
-    abstract fun stackPixel(x: Int, y: Int, stackingImages: List<StackingImage>, color: DoubleArray)
+    abstract fun stackPixel(rows: Array<DoubleArray>, index: Int, color: DoubleArray)
 }
\ No newline at end of file
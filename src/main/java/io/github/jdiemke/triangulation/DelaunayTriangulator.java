@@ -13,6 +13,9 @@ public class DelaunayTriangulator {
 
     private List<Vector2D> pointSet;
     private TriangleSoup triangleSoup;
+    private Triangle2D superTriangle;
+    private double superTriangleCoordinate;
+    private List<Triangle2D> triangles;
 
     /**
      * Constructor of the SimpleDelaunayTriangulator class used to create a new
@@ -33,6 +36,8 @@ public class DelaunayTriangulator {
      */
     public void triangulate() throws NotEnoughPointsException {
         triangleSoup = new TriangleSoup();
+        superTriangle = null;
+        triangles = null;
 
         if (pointSet == null || pointSet.size() < 3) {
             throw new NotEnoughPointsException("Less than three points in point set.");
@@ -44,89 +49,272 @@ public class DelaunayTriangulator {
          * containing the whole point set. We have to scale the super triangle
          * to be very large. Otherwise the triangulation is not convex.
          */
-        double maxOfAnyCoordinate = 0.0d;
-
-        for (Vector2D vector : getPointSet()) {
-            maxOfAnyCoordinate = Math.max(Math.max(vector.x, vector.y), maxOfAnyCoordinate);
-        }
-
-        maxOfAnyCoordinate *= 16.0d;
+        superTriangleCoordinate = maxOfAnyCoordinate(pointSet);
+        double maxOfAnyCoordinate = superTriangleCoordinate * 16.0d;
 
         Vector2D p1 = new Vector2D(0.0d, 3.0d * maxOfAnyCoordinate);
         Vector2D p2 = new Vector2D(3.0d * maxOfAnyCoordinate, 0.0d);
         Vector2D p3 = new Vector2D(-3.0d * maxOfAnyCoordinate, -3.0d * maxOfAnyCoordinate);
 
-        Triangle2D superTriangle = new Triangle2D(p1, p2, p3);
+        superTriangle = new Triangle2D(p1, p2, p3);
 
         triangleSoup.add(superTriangle);
 
         for (int i = 0; i < pointSet.size(); i++) {
-            Triangle2D triangle = triangleSoup.findContainingTriangle(pointSet.get(i));
-
-            if (triangle == null) {
-                /*
-                 * If no containing triangle exists, then the vertex is not
-                 * inside a triangle (this can also happen due to numerical
-                 * errors) and lies on an edge. In order to find this edge we
-                 * search all edges of the triangle soup and select the one
-                 * which is nearest to the point we try to add. This edge is
-                 * removed and four new edges are added.
-                 */
-                Edge2D edge = triangleSoup.findNearestEdge(pointSet.get(i));
-
-                Triangle2D first = triangleSoup.findOneTriangleSharing(edge);
-                Triangle2D second = triangleSoup.findNeighbour(first, edge);
-
-                Vector2D firstNoneEdgeVertex = first.getNoneEdgeVertex(edge);
-                Vector2D secondNoneEdgeVertex = second.getNoneEdgeVertex(edge);
-
-                triangleSoup.remove(first);
-                triangleSoup.remove(second);
-
-                Triangle2D triangle1 = new Triangle2D(edge.a, firstNoneEdgeVertex, pointSet.get(i));
-                Triangle2D triangle2 = new Triangle2D(edge.b, firstNoneEdgeVertex, pointSet.get(i));
-                Triangle2D triangle3 = new Triangle2D(edge.a, secondNoneEdgeVertex, pointSet.get(i));
-                Triangle2D triangle4 = new Triangle2D(edge.b, secondNoneEdgeVertex, pointSet.get(i));
-
-                triangleSoup.add(triangle1);
-                triangleSoup.add(triangle2);
-                triangleSoup.add(triangle3);
-                triangleSoup.add(triangle4);
-
-                legalizeEdge(triangle1, new Edge2D(edge.a, firstNoneEdgeVertex), pointSet.get(i));
-                legalizeEdge(triangle2, new Edge2D(edge.b, firstNoneEdgeVertex), pointSet.get(i));
-                legalizeEdge(triangle3, new Edge2D(edge.a, secondNoneEdgeVertex), pointSet.get(i));
-                legalizeEdge(triangle4, new Edge2D(edge.b, secondNoneEdgeVertex), pointSet.get(i));
-            } else {
-                /*
-                 * The vertex is inside a triangle.
-                 */
-                Vector2D a = triangle.a;
-                Vector2D b = triangle.b;
-                Vector2D c = triangle.c;
+            insertPoint(pointSet.get(i), i);
+        }
+    }
 
-                triangleSoup.remove(triangle);
+    /**
+     * Returns the largest coordinate of the specified points, the super
+     * triangle is sized from it.
+     * 
+     * @param points
+     *            The points
+     * @return The largest x or y coordinate, but at least 0
+     */
+    private static double maxOfAnyCoordinate(List<Vector2D> points) {
+        double maxOfAnyCoordinate = 0.0d;
+
+        for (Vector2D vector : points) {
+            maxOfAnyCoordinate = Math.max(Math.max(vector.x, vector.y), maxOfAnyCoordinate);
+        }
+
+        return maxOfAnyCoordinate;
+    }
+
+    /**
+     * Inserts a point into the triangulation, it must lie inside the super
+     * triangle.
+     * 
+     * @param point
+     *            The point to be inserted
+     * @param insertedCount
+     *            The number of points at the start of the point set that are
+     *            already inserted
+     */
+    private void insertPoint(Vector2D point, int insertedCount) {
+        triangles = null;
+
+        Vector2D startVertex = findStartVertex(point, insertedCount);
+        Triangle2D triangle = triangleSoup.findContainingTriangle(point, startVertex);
+
+        if (triangle == null) {
+            /*
+             * If no containing triangle exists, then the vertex is not
+             * inside a triangle (this can also happen due to numerical
+             * errors) and lies on an edge. In order to find this edge we
+             * search all edges of the triangle soup and select the one
+             * which is nearest to the point we try to add. This edge is
+             * removed and four new edges are added.
+             */
+            Edge2D edge = triangleSoup.findNearestEdge(point, startVertex);
+
+            Triangle2D first = triangleSoup.findOneTriangleSharing(edge);
+            Triangle2D second = triangleSoup.findNeighbour(first, edge);
+
+            Vector2D firstNoneEdgeVertex = first.getNoneEdgeVertex(edge);
+            Vector2D secondNoneEdgeVertex = second.getNoneEdgeVertex(edge);
+
+            triangleSoup.remove(first);
+            triangleSoup.remove(second);
+
+            Triangle2D triangle1 = new Triangle2D(edge.a, firstNoneEdgeVertex, point);
+            Triangle2D triangle2 = new Triangle2D(edge.b, firstNoneEdgeVertex, point);
+            Triangle2D triangle3 = new Triangle2D(edge.a, secondNoneEdgeVertex, point);
+            Triangle2D triangle4 = new Triangle2D(edge.b, secondNoneEdgeVertex, point);
+
+            triangleSoup.add(triangle1);
+            triangleSoup.add(triangle2);
+            triangleSoup.add(triangle3);
+            triangleSoup.add(triangle4);
+
+            legalizeEdge(triangle1, new Edge2D(edge.a, firstNoneEdgeVertex), point);
+            legalizeEdge(triangle2, new Edge2D(edge.b, firstNoneEdgeVertex), point);
+            legalizeEdge(triangle3, new Edge2D(edge.a, secondNoneEdgeVertex), point);
+            legalizeEdge(triangle4, new Edge2D(edge.b, secondNoneEdgeVertex), point);
+        } else {
+            /*
+             * The vertex is inside a triangle.
+             */
+            Vector2D a = triangle.a;
+            Vector2D b = triangle.b;
+            Vector2D c = triangle.c;
+
+            triangleSoup.remove(triangle);
+
+            Triangle2D first = new Triangle2D(a, b, point);
+            Triangle2D second = new Triangle2D(b, c, point);
+            Triangle2D third = new Triangle2D(c, a, point);
+
+            triangleSoup.add(first);
+            triangleSoup.add(second);
+            triangleSoup.add(third);
+
+            legalizeEdge(first, new Edge2D(a, b), point);
+            legalizeEdge(second, new Edge2D(b, c), point);
+            legalizeEdge(third, new Edge2D(c, a), point);
+        }
+    }
+
+    /**
+     * Finds the vertex nearest to the specified point among a sample of the
+     * inserted points, the search for the containing triangle starts there
+     * (jump and walk).
+     * 
+     * @param point
+     *            The point
+     * @param insertedCount
+     *            The number of points at the start of the point set that are
+     *            already inserted
+     * @return The nearest sampled vertex or null if no points are inserted
+     */
+    private Vector2D findStartVertex(Vector2D point, int insertedCount) {
+        int sampleCount = (int) Math.ceil(Math.cbrt(insertedCount));
+        if (sampleCount == 0) {
+            return null;
+        }
+        int step = insertedCount / sampleCount;
+        Vector2D startVertex = null;
+        double startDistance = Double.MAX_VALUE;
+        for (int i = insertedCount - 1; i >= 0; i -= step) {
+            Vector2D vertex = pointSet.get(i);
+            double distance = vertex.sub(point).mag();
+            if (distance < startDistance) {
+                startVertex = vertex;
+                startDistance = distance;
+            }
+        }
+        return startVertex;
+    }
 
-                Triangle2D first = new Triangle2D(a, b, pointSet.get(i));
-                Triangle2D second = new Triangle2D(b, c, pointSet.get(i));
-                Triangle2D third = new Triangle2D(c, a, pointSet.get(i));
+    /**
+     * Adds a point to the point set and inserts it into the existing
+     * triangulation. The whole point set is triangulated again if the point
+     * lies outside of the bounds the super triangle was sized for, so that
+     * the result is the same as triangulating the whole point set.
+     * 
+     * @param point
+     *            The point to be added
+     * @throws NotEnoughPointsException Thrown when the point set contains less than three points
+     */
+    public void addPoint(Vector2D point) throws NotEnoughPointsException {
+        pointSet.add(point);
+        if (pointSet.size() < 3) {
+            return;
+        }
 
-                triangleSoup.add(first);
-                triangleSoup.add(second);
-                triangleSoup.add(third);
+        if (superTriangle == null || Math.max(point.x, point.y) > superTriangleCoordinate
+                || !superTriangle.contains(point)) {
+            triangulate();
+        } else {
+            insertPoint(point, pointSet.size() - 1);
+        }
+    }
 
-                legalizeEdge(first, new Edge2D(a, b), pointSet.get(i));
-                legalizeEdge(second, new Edge2D(b, c), pointSet.get(i));
-                legalizeEdge(third, new Edge2D(c, a), pointSet.get(i));
+    /**
+     * Removes a point from the point set and from the existing triangulation.
+     * The triangles around the removed point are replaced by the Delaunay
+     * triangulation of its neighbours, restricted to the hole left by the
+     * point. The whole point set is triangulated again if the super triangle
+     * was sized for the removed point.
+     * 
+     * @param point
+     *            The point to be removed
+     * @throws NotEnoughPointsException Thrown when the point set contains less than three points
+     */
+    public void removePoint(Vector2D point) throws NotEnoughPointsException {
+        int index = -1;
+        for (int i = 0; i < pointSet.size() && index < 0; i++) {
+            if (pointSet.get(i) == point) {
+                index = i;
             }
         }
+        if (index < 0) {
+            index = pointSet.indexOf(point);
+        }
+        if (index < 0) {
+            return;
+        }
+
+        Vector2D vertex = pointSet.remove(index);
+        triangles = null;
+        if (superTriangle == null) {
+            return;
+        }
+        if (pointSet.size() < 3) {
+            triangleSoup = new TriangleSoup();
+            superTriangle = null;
+            return;
+        }
+        if (maxOfAnyCoordinate(pointSet) != superTriangleCoordinate) {
+            triangulate();
+            return;
+        }
+
+        List<Triangle2D> hole = triangleSoup.findTrianglesUsing(vertex);
+        List<Vector2D> neighbours = new ArrayList<Vector2D>();
+        double holeArea = 0.0d;
+        for (Triangle2D triangle : hole) {
+            addNeighbour(neighbours, triangle.a, vertex);
+            addNeighbour(neighbours, triangle.b, vertex);
+            addNeighbour(neighbours, triangle.c, vertex);
+            holeArea += Math.abs(TriangleSoup.orientation(triangle.a, triangle.b, triangle.c));
+            triangleSoup.remove(triangle);
+        }
 
         /*
-         * Remove all triangles that contain vertices of the super triangle.
+         * The edges of the hole are Delaunay edges of the neighbours, so the
+         * triangles of their triangulation that lie inside the hole fill it.
+         * Points on the convex hull are neighbours of the super triangle, whose
+         * huge coordinates cannot be triangulated reliably. In this case, or if
+         * numerical problems prevent filling the hole, the whole point set is
+         * triangulated again.
          */
-        triangleSoup.removeTrianglesUsing(superTriangle.a);
-        triangleSoup.removeTrianglesUsing(superTriangle.b);
-        triangleSoup.removeTrianglesUsing(superTriangle.c);
+        double filledArea = 0.0d;
+        boolean convexHull = neighbours.contains(superTriangle.a) || neighbours.contains(superTriangle.b)
+                || neighbours.contains(superTriangle.c);
+        if (!convexHull && neighbours.size() >= 3) {
+            DelaunayTriangulator holeTriangulator = new DelaunayTriangulator(neighbours);
+            holeTriangulator.triangulate();
+            for (Triangle2D triangle : holeTriangulator.getTriangles()) {
+                Vector2D centroid = triangle.a.add(triangle.b).add(triangle.c).mult(1.0d / 3.0d);
+                for (Triangle2D holeTriangle : hole) {
+                    if (holeTriangle.contains(centroid)) {
+                        triangleSoup.add(triangle);
+                        filledArea += Math.abs(TriangleSoup.orientation(triangle.a, triangle.b, triangle.c));
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (Math.abs(filledArea - holeArea) > holeArea * 1.0e-9d) {
+            triangulate();
+        }
+    }
+
+    /**
+     * Adds a vertex of a triangle around the removed vertex to the
+     * neighbours, unless it is already contained.
+     * 
+     * @param neighbours
+     *            The neighbours
+     * @param neighbour
+     *            The vertex to be added
+     * @param removedVertex
+     *            The removed vertex
+     */
+    private void addNeighbour(List<Vector2D> neighbours, Vector2D neighbour, Vector2D removedVertex) {
+        if (neighbour == removedVertex) {
+            return;
+        }
+        for (Vector2D vertex : neighbours) {
+            if (vertex == neighbour) {
+                return;
+            }
+        }
+        neighbours.add(neighbour);
     }
 
     /**
@@ -203,7 +391,21 @@ public class DelaunayTriangulator {
      * @return Returns the triangles of the triangulation.
      */
     public List<Triangle2D> getTriangles() {
-        return triangleSoup.getTriangles();
+        if (triangles == null) {
+            /*
+             * The triangles that contain vertices of the super triangle are
+             * kept for incremental changes, but are not part of the result.
+             */
+            List<Triangle2D> result = new ArrayList<Triangle2D>();
+            for (Triangle2D triangle : triangleSoup.getTriangles()) {
+                if (superTriangle == null || !(triangle.hasVertex(superTriangle.a)
+                        || triangle.hasVertex(superTriangle.b) || triangle.hasVertex(superTriangle.c))) {
+                    result.add(triangle);
+                }
+            }
+            triangles = result;
+        }
+        return triangles;
     }
 
 }
\ No newline at end of file
@@ -2,23 +2,37 @@ package io.github.jdiemke.triangulation;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Triangle soup class implementation.
  * 
+ * The triangles are indexed by their vertices, so that neighbours are found
+ * without scanning the whole soup. Among several candidates the triangle added
+ * first is returned, which gives the same results as a linear scan in
+ * insertion order.
+ * 
  * @author Johannes Diemke
  */
 class TriangleSoup {
 
-    private List<Triangle2D> triangleSoup;
+    private Map<Triangle2D, Long> triangleSoup;
+    private Map<Vector2D, List<Triangle2D>> vertexTriangles;
+    private long sequence;
+    private int degenerateCount;
+    private Triangle2D lastTriangle;
 
     /**
      * Constructor of the triangle soup class used to create a new triangle soup
      * instance.
      */
     public TriangleSoup() {
-        this.triangleSoup = new ArrayList<Triangle2D>();
+        this.triangleSoup = new LinkedHashMap<Triangle2D, Long>();
+        this.vertexTriangles = new IdentityHashMap<Vector2D, List<Triangle2D>>();
     }
 
     /**
@@ -28,7 +42,18 @@ class TriangleSoup {
      *            The triangle to be added to this triangle soup
      */
     public void add(Triangle2D triangle) {
-        this.triangleSoup.add(triangle);
+        this.triangleSoup.put(triangle, sequence++);
+        addVertexTriangle(triangle.a, triangle);
+        if (triangle.b != triangle.a) {
+            addVertexTriangle(triangle.b, triangle);
+        }
+        if (triangle.c != triangle.a && triangle.c != triangle.b) {
+            addVertexTriangle(triangle.c, triangle);
+        }
+        if (isDegenerate(triangle)) {
+            degenerateCount++;
+        }
+        lastTriangle = triangle;
     }
 
     /**
@@ -38,16 +63,44 @@ class TriangleSoup {
      *            The triangle to be removed from this triangle soup
      */
     public void remove(Triangle2D triangle) {
-        this.triangleSoup.remove(triangle);
+        if (this.triangleSoup.remove(triangle) == null) {
+            return;
+        }
+        removeVertexTriangle(triangle.a, triangle);
+        removeVertexTriangle(triangle.b, triangle);
+        removeVertexTriangle(triangle.c, triangle);
+        if (isDegenerate(triangle)) {
+            degenerateCount--;
+        }
+        if (lastTriangle == triangle) {
+            lastTriangle = null;
+        }
     }
 
     /**
      * Returns the triangles from this triangle soup.
      * 
-     * @return The triangles from this triangle soup
+     * @return The triangles from this triangle soup in the order they were
+     *         added
      */
     public List<Triangle2D> getTriangles() {
-        return this.triangleSoup;
+        return new ArrayList<Triangle2D>(this.triangleSoup.keySet());
+    }
+
+    /**
+     * Returns the triangles from this triangle soup that use the specified
+     * vertex instance.
+     * 
+     * @param vertex
+     *            The vertex
+     * @return The triangles using the vertex
+     */
+    public List<Triangle2D> findTrianglesUsing(Vector2D vertex) {
+        List<Triangle2D> triangles = vertexTriangles.get(vertex);
+        if (triangles == null) {
+            return new ArrayList<Triangle2D>();
+        }
+        return new ArrayList<Triangle2D>(triangles);
     }
 
     /**
@@ -60,7 +113,34 @@ class TriangleSoup {
      *         specified point or null
      */
     public Triangle2D findContainingTriangle(Vector2D point) {
-        for (Triangle2D triangle : triangleSoup) {
+        return findContainingTriangle(point, null);
+    }
+
+    /**
+     * Returns the triangle from this triangle soup that contains the specified
+     * point or null if no triangle from the triangle soup contains the point.
+     * 
+     * The triangulation is walked towards the point, starting from a triangle
+     * using the specified vertex or otherwise from the last added triangle. If
+     * the walk is inconclusive (the point lies on an edge or the walk does not
+     * terminate) the triangles are scanned linearly. Duplicate points leave
+     * degenerate and overlapping triangles, in this case the triangles are
+     * always scanned linearly.
+     * 
+     * @param point
+     *            The point
+     * @param startVertex
+     *            A vertex near the point or null
+     * @return Returns the triangle from this triangle soup that contains the
+     *         specified point or null
+     */
+    public Triangle2D findContainingTriangle(Vector2D point, Vector2D startVertex) {
+        Triangle2D walkTriangle = walk(point, startVertex);
+        if (walkTriangle != null && walkTriangle.contains(point)) {
+            return walkTriangle;
+        }
+
+        for (Triangle2D triangle : triangleSoup.keySet()) {
             if (triangle.contains(point)) {
                 return triangle;
             }
@@ -68,6 +148,54 @@ class TriangleSoup {
         return null;
     }
 
+    /**
+     * Walks towards the specified point, crossing the edges that separate the
+     * current triangle from the point. The walk starts from a triangle using
+     * the specified vertex or otherwise from the last added triangle.
+     * 
+     * @param point
+     *            The point
+     * @param startVertex
+     *            A vertex near the point or null
+     * @return The triangle containing the point in its interior or on its
+     *         boundary or null if the walk was inconclusive
+     */
+    private Triangle2D walk(Vector2D point, Vector2D startVertex) {
+        if (degenerateCount != 0) {
+            return null;
+        }
+        Triangle2D triangle = lastTriangle;
+        List<Triangle2D> startTriangles = startVertex == null ? null : vertexTriangles.get(startVertex);
+        if (startTriangles != null) {
+            triangle = startTriangles.get(0);
+        }
+        if (triangle == null) {
+            return null;
+        }
+
+        int maxSteps = triangleSoup.size();
+        for (int step = 0; step < maxSteps; step++) {
+            Edge2D edge = null;
+            if (isSeparated(triangle.a, triangle.b, triangle.c, point)) {
+                edge = new Edge2D(triangle.a, triangle.b);
+            } else if (isSeparated(triangle.b, triangle.c, triangle.a, point)) {
+                edge = new Edge2D(triangle.b, triangle.c);
+            } else if (isSeparated(triangle.c, triangle.a, triangle.b, point)) {
+                edge = new Edge2D(triangle.c, triangle.a);
+            }
+
+            if (edge == null) {
+                return triangle;
+            }
+
+            triangle = findNeighbour(triangle, edge);
+            if (triangle == null) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the neighbor triangle of the specified triangle sharing the same
      * edge as specified. If no neighbor sharing the same edge exists null is
@@ -81,12 +209,18 @@ class TriangleSoup {
      *         no triangle exists
      */
     public Triangle2D findNeighbour(Triangle2D triangle, Edge2D edge) {
-        for (Triangle2D triangleFromSoup : triangleSoup) {
-            if (triangleFromSoup.isNeighbour(edge) && triangleFromSoup != triangle) {
-                return triangleFromSoup;
+        Triangle2D result = null;
+        List<Triangle2D> candidates = vertexTriangles.get(edge.a);
+        if (candidates != null) {
+            for (Triangle2D candidate : candidates) {
+                if (candidate.isNeighbour(edge) && candidate != triangle) {
+                    if (result == null || triangleSoup.get(candidate) < triangleSoup.get(result)) {
+                        result = candidate;
+                    }
+                }
             }
         }
-        return null;
+        return result;
     }
 
     /**
@@ -100,12 +234,7 @@ class TriangleSoup {
      * @return Returns one triangle that shares the specified edge
      */
     public Triangle2D findOneTriangleSharing(Edge2D edge) {
-        for (Triangle2D triangle : triangleSoup) {
-            if (triangle.isNeighbour(edge)) {
-                return triangle;
-            }
-        }
-        return null;
+        return findNeighbour(null, edge);
     }
 
     /**
@@ -116,10 +245,40 @@ class TriangleSoup {
      * @return The edge from the triangle soup nearest to the specified point
      */
     public Edge2D findNearestEdge(Vector2D point) {
+        return findNearestEdge(point, null);
+    }
+
+    /**
+     * Returns the edge from the triangle soup nearest to the specified point.
+     * 
+     * If the point lies on the boundary of the triangle found by walking
+     * towards it, only the triangles around this triangle are considered, in
+     * the order they were added. Otherwise all triangles are considered.
+     * 
+     * @param point
+     *            The point
+     * @param startVertex
+     *            A vertex near the point or null
+     * @return The edge from the triangle soup nearest to the specified point
+     */
+    public Edge2D findNearestEdge(Vector2D point, Vector2D startVertex) {
         List<EdgeDistancePack> edgeList = new ArrayList<EdgeDistancePack>();
 
-        for (Triangle2D triangle : triangleSoup) {
-            edgeList.add(triangle.findNearestEdge(point));
+        Triangle2D boundaryTriangle = walk(point, startVertex);
+        if (boundaryTriangle != null) {
+            Map<Long, Triangle2D> candidates = new TreeMap<Long, Triangle2D>();
+            for (Vector2D vertex : new Vector2D[] { boundaryTriangle.a, boundaryTriangle.b, boundaryTriangle.c }) {
+                for (Triangle2D triangle : vertexTriangles.get(vertex)) {
+                    candidates.put(triangleSoup.get(triangle), triangle);
+                }
+            }
+            for (Triangle2D triangle : candidates.values()) {
+                edgeList.add(triangle.findNearestEdge(point));
+            }
+        } else {
+            for (Triangle2D triangle : triangleSoup.keySet()) {
+                edgeList.add(triangle.findNearestEdge(point));
+            }
         }
 
         EdgeDistancePack[] edgeDistancePacks = new EdgeDistancePack[edgeList.size()];
@@ -139,13 +298,103 @@ class TriangleSoup {
     public void removeTrianglesUsing(Vector2D vertex) {
         List<Triangle2D> trianglesToBeRemoved = new ArrayList<Triangle2D>();
 
-        for (Triangle2D triangle : triangleSoup) {
+        for (Triangle2D triangle : triangleSoup.keySet()) {
             if (triangle.hasVertex(vertex)) {
                 trianglesToBeRemoved.add(triangle);
             }
         }
 
-        triangleSoup.removeAll(trianglesToBeRemoved);
+        for (Triangle2D triangle : trianglesToBeRemoved) {
+            remove(triangle);
+        }
+    }
+
+    /**
+     * Adds the triangle to the triangles using the specified vertex.
+     * 
+     * @param vertex
+     *            The vertex
+     * @param triangle
+     *            The triangle using the vertex
+     */
+    private void addVertexTriangle(Vector2D vertex, Triangle2D triangle) {
+        List<Triangle2D> triangles = vertexTriangles.get(vertex);
+        if (triangles == null) {
+            triangles = new ArrayList<Triangle2D>(8);
+            vertexTriangles.put(vertex, triangles);
+        }
+        triangles.add(triangle);
+    }
+
+    /**
+     * Removes the triangle from the triangles using the specified vertex.
+     * 
+     * @param vertex
+     *            The vertex
+     * @param triangle
+     *            The triangle using the vertex
+     */
+    private void removeVertexTriangle(Vector2D vertex, Triangle2D triangle) {
+        List<Triangle2D> triangles = vertexTriangles.get(vertex);
+        if (triangles == null) {
+            return;
+        }
+        for (int i = 0; i < triangles.size(); i++) {
+            if (triangles.get(i) == triangle) {
+                triangles.remove(i);
+                break;
+            }
+        }
+        if (triangles.isEmpty()) {
+            vertexTriangles.remove(vertex);
+        }
+    }
+
+    /**
+     * Tests if the specified point lies strictly on the other side of the edge
+     * ab than the vertex c.
+     * 
+     * @param a
+     *            The first vertex of the edge
+     * @param b
+     *            The second vertex of the edge
+     * @param c
+     *            The opposite vertex of the triangle
+     * @param point
+     *            The point to be tested
+     * @return Returns true iff the edge separates the point from the triangle
+     */
+    private static boolean isSeparated(Vector2D a, Vector2D b, Vector2D c, Vector2D point) {
+        double side = orientation(a, b, c);
+        double pointSide = orientation(a, b, point);
+        return (side > 0.0d && pointSide < 0.0d) || (side < 0.0d && pointSide > 0.0d);
+    }
+
+    /**
+     * Tests if the specified triangle has no area.
+     * 
+     * @param triangle
+     *            The triangle to be tested
+     * @return Returns true iff the vertices of the triangle are colinear
+     */
+    private static boolean isDegenerate(Triangle2D triangle) {
+        return orientation(triangle.a, triangle.b, triangle.c) == 0.0d;
+    }
+
+    /**
+     * Computes twice the signed area of the triangle abc.
+     * 
+     * @param a
+     *            The first vertex
+     * @param b
+     *            The second vertex
+     * @param c
+     *            The third vertex
+     * @return Positive if c lies to the left of the directed line ab, negative
+     *         if it lies to the right and zero if the points are colinear
+     */
+    static double orientation(Vector2D a, Vector2D b, Vector2D c) {
+        return (b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x);
     }
 
 }
\ No newline at end of file
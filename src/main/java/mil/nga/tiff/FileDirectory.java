@@ -4,6 +4,7 @@ import mil.nga.tiff.compression.CompressionDecoder;
 import mil.nga.tiff.compression.DeflateCompression;
 import mil.nga.tiff.compression.LZWCompression;
 import mil.nga.tiff.compression.PackbitsCompression;
+import mil.nga.tiff.compression.Predictor;
 import mil.nga.tiff.compression.RawCompression;
 import mil.nga.tiff.compression.UnsupportedCompression;
 import mil.nga.tiff.io.ByteReader;
@@ -19,6 +20,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.IntStream;
 
 /**
  * File Directory, represents all directory entries and can be used to read the
@@ -68,6 +70,16 @@ public class FileDirectory {
 	 */
 	private Rasters writeRasters = null;
 
+	/**
+	 * Strip source to stream to the TIFF file instead of the write rasters
+	 */
+	private StripSource writeStripSource = null;
+
+	/**
+	 * Compression level used when writing, null for the encoder default
+	 */
+	private Integer writeCompressionLevel = null;
+
 	/**
 	 * Last block index, index of single block cache
 	 */
@@ -129,43 +141,46 @@ public class FileDirectory {
 		}
 
 		// Determine the decoder based upon the compression
+		decoder = createDecoder();
+	}
+
+	/**
+	 * Create a compression decoder for the compression of this directory.
+	 * Decoders can hold state while decoding, concurrent decoding needs one
+	 * decoder per thread.
+	 * 
+	 * @return compression decoder
+	 */
+	private CompressionDecoder createDecoder() {
 		Integer compression = getCompression();
 		if (compression == null) {
 			compression = TiffConstants.COMPRESSION_NO;
 		}
 		switch (compression) {
 		case TiffConstants.COMPRESSION_NO:
-			decoder = new RawCompression();
-			break;
+			return new RawCompression();
 		case TiffConstants.COMPRESSION_CCITT_HUFFMAN:
-			decoder = new UnsupportedCompression(
+			return new UnsupportedCompression(
 					"CCITT Huffman compression not supported: " + compression);
-			break;
 		case TiffConstants.COMPRESSION_T4:
-			decoder = new UnsupportedCompression(
+			return new UnsupportedCompression(
 					"T4-encoding compression not supported: " + compression);
-			break;
 		case TiffConstants.COMPRESSION_T6:
-			decoder = new UnsupportedCompression(
+			return new UnsupportedCompression(
 					"T6-encoding compression not supported: " + compression);
-			break;
 		case TiffConstants.COMPRESSION_LZW:
-			decoder = new LZWCompression();
-			break;
+			return new LZWCompression();
 		case TiffConstants.COMPRESSION_JPEG_OLD:
 		case TiffConstants.COMPRESSION_JPEG_NEW:
-			decoder = new UnsupportedCompression(
+			return new UnsupportedCompression(
 					"JPEG compression not supported: " + compression);
-			break;
 		case TiffConstants.COMPRESSION_DEFLATE:
 		case TiffConstants.COMPRESSION_PKZIP_DEFLATE:
-			decoder = new DeflateCompression();
-			break;
+			return new DeflateCompression();
 		case TiffConstants.COMPRESSION_PACKBITS:
-			decoder = new PackbitsCompression();
-			break;
+			return new PackbitsCompression();
 		default:
-			decoder = new UnsupportedCompression(
+			return new UnsupportedCompression(
 					"Unknown compression method identifier: " + compression);
 		}
 	}
@@ -415,6 +430,25 @@ public class FileDirectory {
 		setUnsignedIntegerEntryValue(FieldTagType.Compression, compression);
 	}
 
+	/**
+	 * Get the predictor
+	 * 
+	 * @return predictor
+	 */
+	public Integer getPredictor() {
+		return getIntegerEntryValue(FieldTagType.Predictor);
+	}
+
+	/**
+	 * Set the predictor
+	 * 
+	 * @param predictor
+	 *            predictor
+	 */
+	public void setPredictor(int predictor) {
+		setUnsignedIntegerEntryValue(FieldTagType.Predictor, predictor);
+	}
+
 	/**
 	 * Get the photometric interpretation
 	 * 
@@ -958,6 +992,46 @@ public class FileDirectory {
 		writeRasters = rasters;
 	}
 
+	/**
+	 * Get the strip source for streaming a TIFF file
+	 * 
+	 * @return strip source
+	 */
+	public StripSource getWriteStripSource() {
+		return writeStripSource;
+	}
+
+	/**
+	 * Set the strip source for streaming a TIFF file. Used instead of the
+	 * write rasters when no write rasters are set.
+	 * 
+	 * @param stripSource
+	 *            strip source
+	 */
+	public void setWriteStripSource(StripSource stripSource) {
+		writeStripSource = stripSource;
+	}
+
+	/**
+	 * Get the compression level used when writing a TIFF file
+	 * 
+	 * @return compression level, null for the encoder default
+	 */
+	public Integer getWriteCompressionLevel() {
+		return writeCompressionLevel;
+	}
+
+	/**
+	 * Set the compression level used when writing a TIFF file with Deflate
+	 * compression
+	 * 
+	 * @param compressionLevel
+	 *            compression level (0-9), null for the encoder default
+	 */
+	public void setWriteCompressionLevel(Integer compressionLevel) {
+		writeCompressionLevel = compressionLevel;
+	}
+
 	/**
 	 * Read the rasters
 	 * 
@@ -1193,7 +1267,8 @@ public class FileDirectory {
 	}
 
 	/**
-	 * Read and populate the rasters
+	 * Read and populate the rasters. Independent tiles and strips are decoded
+	 * in parallel and their samples are copied with bulk buffer transfers.
 	 * 
 	 * @param window
 	 *            image window
@@ -1213,124 +1288,245 @@ public class FileDirectory {
 		int minYTile = window.getMinY() / tileHeight;
 		int maxYTile = (window.getMaxY() + tileHeight - 1) / tileHeight;
 
-		int windowWidth = window.getMaxX() - window.getMinX();
-
-		int bytesPerPixel = getBytesPerPixel();
+		boolean planar = planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR;
+		int bytesPerPixel = planar ? 0 : getBytesPerPixel();
 
 		int[] srcSampleOffsets = new int[samples.length];
-		FieldType[] sampleFieldTypes = new FieldType[samples.length];
+		int[] srcSampleBytes = new int[samples.length];
 		for (int i = 0; i < samples.length; i++) {
 			int sampleOffset = 0;
-			if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_CHUNKY) {
+			if (!planar) {
 				sampleOffset = sum(getBitsPerSample(), 0, samples[i]) / 8;
 			}
 			srcSampleOffsets[i] = sampleOffset;
-			sampleFieldTypes[i] = getFieldTypeForSample(samples[i]);
+			srcSampleBytes[i] = getSampleByteSize(samples[i]);
 		}
 
-		for (int yTile = minYTile; yTile < maxYTile; yTile++) {
-			for (int xTile = minXTile; xTile < maxXTile; xTile++) {
-
-				int firstLine = yTile * tileHeight;
-				int firstCol = xTile * tileWidth;
-				int lastLine = (yTile + 1) * tileHeight;
-				int lastCol = (xTile + 1) * tileWidth;
-
-				for (int sampleIndex = 0; sampleIndex < samples.length; sampleIndex++) {
-					int sample = samples[sampleIndex];
-					if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
-						bytesPerPixel = getSampleByteSize(sample);
-					}
-
-					byte[] block = getTileOrStrip(xTile, yTile, sample);
-					ByteReader blockReader = new ByteReader(block,
-							reader.getByteOrder());
-
-					for (int y = Math.max(0, window.getMinY()
-							- firstLine); y < Math.min(tileHeight, tileHeight
-									- (lastLine - window.getMaxY())); y++) {
-
-						for (int x = Math.max(0, window.getMinX()
-								- firstCol); x < Math.min(tileWidth, tileWidth
-										- (lastCol - window.getMaxX())); x++) {
-
-							int pixelOffset = (y * tileWidth + x)
-									* bytesPerPixel;
-							int valueOffset = pixelOffset
-									+ srcSampleOffsets[sampleIndex];
-							blockReader.setNextByte(valueOffset);
-
-							// Read the value
-							Number value = readValue(blockReader,
-									sampleFieldTypes[sampleIndex]);
-
-							if (rasters.hasInterleaveValues()) {
-								int windowCoordinate = (y + firstLine
-										- window.getMinY()) * windowWidth
-										+ (x + firstCol - window.getMinX());
-								rasters.addToInterleave(sampleIndex,
-										windowCoordinate, value);
-							}
-
-							if (rasters.hasSampleValues()) {
-								int windowCoordinate = (y + firstLine
-										- window.getMinY()) * windowWidth + x
-										+ firstCol - window.getMinX();
-								rasters.addToSample(sampleIndex,
-										windowCoordinate, value);
-							}
-						}
-
-					}
-				}
-			}
+		int numXTiles = maxXTile - minXTile;
+		int numTiles = numXTiles * (maxYTile - minYTile);
+		int numBlocks = planar ? numTiles * samples.length : numTiles;
+
+		IntStream blocks = IntStream.range(0, numBlocks);
+		if (numBlocks > 1) {
+			blocks = blocks.parallel();
 		}
+		blocks.forEach(block -> {
+			int tile = block % numTiles;
+			int xTile = minXTile + tile % numXTiles;
+			int yTile = minYTile + tile / numXTiles;
+			CompressionDecoder blockDecoder = createDecoder();
+			if (planar) {
+				int sampleIndex = block / numTiles;
+				byte[] tileOrStrip = getTileOrStrip(xTile, yTile,
+						samples[sampleIndex], blockDecoder);
+				copyTileOrStrip(window, rasters, tileOrStrip, xTile, yTile,
+						srcSampleBytes[sampleIndex], sampleIndex, sampleIndex,
+						srcSampleOffsets, srcSampleBytes);
+			} else {
+				byte[] tileOrStrip = getTileOrStrip(xTile, yTile, 0,
+						blockDecoder);
+				copyTileOrStrip(window, rasters, tileOrStrip, xTile, yTile,
+						bytesPerPixel, 0, samples.length - 1,
+						srcSampleOffsets, srcSampleBytes);
+			}
+		});
 	}
 
 	/**
-	 * Read the value from the reader according to the field type
+	 * Copy the samples of a decoded tile or strip that are inside the window
+	 * into the rasters
 	 * 
-	 * @param reader
-	 *            byte reader
-	 * @param fieldType
-	 *            field type
-	 * @return value
-	 */
-	private Number readValue(ByteReader reader, FieldType fieldType) {
+	 * @param window
+	 *            image window
+	 * @param rasters
+	 *            rasters to populate
+	 * @param tileOrStrip
+	 *            decoded tile or strip bytes
+	 * @param xTile
+	 *            x tile coordinate
+	 * @param yTile
+	 *            y tile coordinate
+	 * @param bytesPerPixel
+	 *            bytes per pixel in the tile or strip
+	 * @param firstSampleIndex
+	 *            first index into the requested samples to copy
+	 * @param lastSampleIndex
+	 *            last index into the requested samples to copy
+	 * @param srcSampleOffsets
+	 *            byte offsets of the requested samples in a pixel
+	 * @param srcSampleBytes
+	 *            byte sizes of the requested samples
+	 */
+	private void copyTileOrStrip(ImageWindow window, Rasters rasters,
+			byte[] tileOrStrip, int xTile, int yTile, int bytesPerPixel,
+			int firstSampleIndex, int lastSampleIndex, int[] srcSampleOffsets,
+			int[] srcSampleBytes) {
 
-		Number value = null;
+		int tileWidth = getTileWidth().intValue();
+		int tileHeight = getTileHeight().intValue();
+		int windowWidth = window.getMaxX() - window.getMinX();
 
-		switch (fieldType) {
-		case BYTE:
-			value = reader.readUnsignedByte();
-			break;
-		case SHORT:
-			value = reader.readUnsignedShort();
-			break;
-		case LONG:
-			value = reader.readUnsignedInt();
-			break;
-		case SBYTE:
-			value = reader.readByte();
-			break;
-		case SSHORT:
-			value = reader.readShort();
+		int firstLine = yTile * tileHeight;
+		int firstCol = xTile * tileWidth;
+		int minY = Math.max(0, window.getMinY() - firstLine);
+		int maxY = Math.min(tileHeight, window.getMaxY() - firstLine);
+		int minX = Math.max(0, window.getMinX() - firstCol);
+		int maxX = Math.min(tileWidth, window.getMaxX() - firstCol);
+		int count = maxX - minX;
+		if (count <= 0) {
+			return;
+		}
+
+		ByteBuffer src = ByteBuffer.wrap(tileOrStrip);
+		src.order(reader.getByteOrder());
+
+		ByteBuffer interleave = rasters.hasInterleaveValues()
+				? rasters.getInterleaveValues() : null;
+		ByteBuffer[] sampleValues = rasters.hasSampleValues()
+				? rasters.getSampleValues() : null;
+
+		FieldType[] fieldTypes = rasters.getFieldTypes();
+		int interleavePixelSize = rasters.sizePixel();
+		int[] interleaveOffsets = new int[fieldTypes.length];
+		for (int i = 1; i < fieldTypes.length; i++) {
+			interleaveOffsets[i] = interleaveOffsets[i - 1]
+					+ fieldTypes[i - 1].getBytes();
+		}
+
+		// Whole interleaved rows can be copied at once if all samples are
+		// read in their original order and layout
+		boolean interleaveRows = interleave != null
+				&& firstSampleIndex == 0
+				&& lastSampleIndex == fieldTypes.length - 1
+				&& interleavePixelSize == bytesPerPixel
+				&& srcSampleOffsets[0] == 0;
+		for (int i = firstSampleIndex; interleaveRows
+				&& i <= lastSampleIndex; i++) {
+			interleaveRows = srcSampleOffsets[i] == interleaveOffsets[i]
+					&& srcSampleBytes[i] == fieldTypes[i].getBytes();
+		}
+
+		for (int y = minY; y < maxY; y++) {
+			int windowCoordinate = (y + firstLine - window.getMinY())
+					* windowWidth + (minX + firstCol - window.getMinX());
+			int srcPixelIndex = (y * tileWidth + minX) * bytesPerPixel;
+
+			if (interleaveRows) {
+				copyBytes(src, srcPixelIndex, interleave,
+						windowCoordinate * interleavePixelSize,
+						count * bytesPerPixel);
+			}
+
+			for (int sampleIndex = firstSampleIndex; sampleIndex <= lastSampleIndex; sampleIndex++) {
+				int srcIndex = srcPixelIndex + srcSampleOffsets[sampleIndex];
+				int sampleBytes = srcSampleBytes[sampleIndex];
+
+				if (interleave != null && !interleaveRows) {
+					copySamples(src, srcIndex, bytesPerPixel, interleave,
+							windowCoordinate * interleavePixelSize
+									+ interleaveOffsets[sampleIndex],
+							interleavePixelSize, sampleBytes, count);
+				}
+
+				if (sampleValues != null) {
+					int destBytes = fieldTypes[sampleIndex].getBytes();
+					copySamples(src, srcIndex, bytesPerPixel,
+							sampleValues[sampleIndex],
+							windowCoordinate * destBytes, destBytes,
+							sampleBytes, count);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy sample values between two buffers of the same byte order
+	 * 
+	 * @param src
+	 *            source buffer
+	 * @param srcIndex
+	 *            byte index of the first source value
+	 * @param srcStride
+	 *            byte distance between source values
+	 * @param dest
+	 *            destination buffer
+	 * @param destIndex
+	 *            byte index of the first destination value
+	 * @param destStride
+	 *            byte distance between destination values
+	 * @param sampleBytes
+	 *            bytes per value
+	 * @param count
+	 *            number of values
+	 */
+	private static void copySamples(ByteBuffer src, int srcIndex,
+			int srcStride, ByteBuffer dest, int destIndex, int destStride,
+			int sampleBytes, int count) {
+		if (srcStride == sampleBytes && destStride == sampleBytes) {
+			copyBytes(src, srcIndex, dest, destIndex, count * sampleBytes);
+			return;
+		}
+		switch (sampleBytes) {
+		case 1:
+			for (int i = 0; i < count; i++) {
+				dest.put(destIndex, src.get(srcIndex));
+				srcIndex += srcStride;
+				destIndex += destStride;
+			}
 			break;
-		case SLONG:
-			value = reader.readInt();
+		case 2:
+			for (int i = 0; i < count; i++) {
+				dest.putShort(destIndex, src.getShort(srcIndex));
+				srcIndex += srcStride;
+				destIndex += destStride;
+			}
 			break;
-		case FLOAT:
-			value = reader.readFloat();
+		case 4:
+			for (int i = 0; i < count; i++) {
+				dest.putInt(destIndex, src.getInt(srcIndex));
+				srcIndex += srcStride;
+				destIndex += destStride;
+			}
 			break;
-		case DOUBLE:
-			value = reader.readDouble();
+		case 8:
+			for (int i = 0; i < count; i++) {
+				dest.putLong(destIndex, src.getLong(srcIndex));
+				srcIndex += srcStride;
+				destIndex += destStride;
+			}
 			break;
 		default:
-			throw new TiffException(
-					"Unsupported raster field type: " + fieldType);
+			for (int i = 0; i < count; i++) {
+				copyBytes(src, srcIndex, dest, destIndex, sampleBytes);
+				srcIndex += srcStride;
+				destIndex += destStride;
+			}
+			break;
 		}
+	}
 
-		return value;
+	/**
+	 * Bulk copy bytes between two buffers without changing their positions
+	 * 
+	 * @param src
+	 *            source buffer
+	 * @param srcIndex
+	 *            byte index in the source
+	 * @param dest
+	 *            destination buffer
+	 * @param destIndex
+	 *            byte index in the destination
+	 * @param length
+	 *            number of bytes
+	 */
+	private static void copyBytes(ByteBuffer src, int srcIndex,
+			ByteBuffer dest, int destIndex, int length) {
+		ByteBuffer srcRange = src.duplicate();
+		srcRange.limit(srcIndex + length);
+		srcRange.position(srcIndex);
+		ByteBuffer destRange = dest.duplicate();
+		destRange.position(destIndex);
+		destRange.put(srcRange);
 	}
 
 	/**
@@ -1357,7 +1553,8 @@ public class FileDirectory {
 	}
 
 	/**
-	 * Get the tile or strip for the sample coordinate
+	 * Get the tile or strip for the sample coordinate. Safe to call
+	 * concurrently when each caller uses its own decoder.
 	 * 
 	 * @param x
 	 *            x coordinate
@@ -1365,9 +1562,12 @@ public class FileDirectory {
 	 *            y coordinate
 	 * @param sample
 	 *            sample index
+	 * @param blockDecoder
+	 *            compression decoder used by the calling thread
 	 * @return bytes
 	 */
-	private byte[] getTileOrStrip(int x, int y, int sample) {
+	private byte[] getTileOrStrip(int x, int y, int sample,
+			CompressionDecoder blockDecoder) {
 
 		byte[] tileOrStrip = null;
 
@@ -1387,11 +1587,15 @@ public class FileDirectory {
 		}
 
 		// Attempt to pull from the cache
-		if (cache != null && cache.containsKey(index)) {
-			tileOrStrip = cache.get(index);
-		} else if (lastBlockIndex == index && lastBlock != null) {
-			tileOrStrip = lastBlock;
-		} else {
+		synchronized (this) {
+			if (cache != null && cache.containsKey(index)) {
+				tileOrStrip = cache.get(index);
+			} else if (lastBlockIndex == index && lastBlock != null) {
+				tileOrStrip = lastBlock;
+			}
+		}
+
+		if (tileOrStrip == null) {
 
 			// Read and decode the block
 
@@ -1405,16 +1609,31 @@ public class FileDirectory {
 				byteCount = getStripByteCounts().get(index).intValue();
 			}
 
-			reader.setNextByte(offset);
-			byte[] bytes = reader.readBytes(byteCount);
-			tileOrStrip = decoder.decode(bytes, reader.getByteOrder());
+			byte[] bytes = reader.readBytes(offset, byteCount);
+			tileOrStrip = blockDecoder.decode(bytes, reader.getByteOrder());
+
+			// Reverse the predictor
+			Integer predictor = getPredictor();
+			if (predictor != null && predictor != TiffConstants.PREDICTOR_NO) {
+				int samplesPerPixel = 1;
+				int bytesPerSample = getSampleByteSize(sample);
+				if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_CHUNKY) {
+					samplesPerPixel = getSamplesPerPixel();
+					bytesPerSample = getSampleByteSize(0);
+				}
+				Predictor.decode(predictor, tileOrStrip, tileWidth
+						* samplesPerPixel * bytesPerSample, samplesPerPixel,
+						bytesPerSample, reader.getByteOrder());
+			}
 
 			// Cache the data
-			if (cache != null) {
-				cache.put(index, tileOrStrip);
-			} else {
-				lastBlockIndex = index;
-				lastBlock = tileOrStrip;
+			synchronized (this) {
+				if (cache != null) {
+					cache.put(index, tileOrStrip);
+				} else {
+					lastBlockIndex = index;
+					lastBlock = tileOrStrip;
+				}
 			}
 		}
 
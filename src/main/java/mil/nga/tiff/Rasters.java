@@ -820,6 +820,239 @@ public class Rasters {
 		setPixelSample(0, x, y, value);
 	}
 
+	/**
+	 * Get the pixel sample values as doubles without boxing. Only the first
+	 * values.length samples are read if the pixel has more samples.
+	 * 
+	 * @param x
+	 *            x coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getWidth()})
+	 * @param y
+	 *            y coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getHeight()})
+	 * @param values
+	 *            array to store the pixel sample values
+	 * @return pixel sample values
+	 */
+	public double[] getPixelDouble(int x, int y, double[] values) {
+		validateCoordinates(x, y);
+		int samples = Math.min(values.length, getSamplesPerPixel());
+		for (int i = 0; i < samples; i++) {
+			values[i] = readSampleDouble(sampleBuffer(i), fieldTypes[i],
+					sampleBufferIndex(i, x, y));
+		}
+		return values;
+	}
+
+	/**
+	 * Set the pixel sample values from doubles without boxing
+	 * 
+	 * @param x
+	 *            x coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getWidth()})
+	 * @param y
+	 *            y coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getHeight()})
+	 * @param values
+	 *            pixel sample values
+	 */
+	public void setPixelDouble(int x, int y, double[] values) {
+		validateCoordinates(x, y);
+		int samples = Math.min(values.length, getSamplesPerPixel());
+		for (int i = 0; i < samples; i++) {
+			writeSampleDouble(sampleBuffer(i), fieldTypes[i],
+					sampleBufferIndex(i, x, y), values[i]);
+		}
+	}
+
+	/**
+	 * Set the pixel sample values from floats without boxing
+	 * 
+	 * @param x
+	 *            x coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getWidth()})
+	 * @param y
+	 *            y coordinate (&gt;= 0 &amp;&amp; &lt; {@link #getHeight()})
+	 * @param values
+	 *            pixel sample values
+	 */
+	public void setPixelFloat(int x, int y, float... values) {
+		validateCoordinates(x, y);
+		int samples = Math.min(values.length, getSamplesPerPixel());
+		for (int i = 0; i < samples; i++) {
+			writeSampleDouble(sampleBuffer(i), fieldTypes[i],
+					sampleBufferIndex(i, x, y), values[i]);
+		}
+	}
+
+	/**
+	 * Read consecutive values of a single sample in a row as doubles. The
+	 * field type is resolved once for the whole run of values.
+	 * 
+	 * @param sample
+	 *            sample index
+	 * @param x
+	 *            x coordinate of the first value
+	 * @param y
+	 *            y coordinate
+	 * @param count
+	 *            number of values to read
+	 * @param values
+	 *            array to store the values
+	 * @param offset
+	 *            index in values of the first value
+	 * @param stride
+	 *            distance in values between two consecutive values
+	 */
+	public void readSamples(int sample, int x, int y, int count,
+			double[] values, int offset, int stride) {
+		validateSample(sample);
+		ByteBuffer buffer = sampleBuffer(sample);
+		int bufferIndex = sampleBufferIndex(sample, x, y);
+		int bufferStride = sampleBufferStride(sample);
+		int index = offset;
+		switch (fieldTypes[sample]) {
+		case BYTE:
+			for (int i = 0; i < count; i++) {
+				values[index] = buffer.get(bufferIndex) & 0xff;
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		case SHORT:
+			for (int i = 0; i < count; i++) {
+				values[index] = buffer.getShort(bufferIndex) & 0xffff;
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		case FLOAT:
+			for (int i = 0; i < count; i++) {
+				values[index] = buffer.getFloat(bufferIndex);
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		case DOUBLE:
+			for (int i = 0; i < count; i++) {
+				values[index] = buffer.getDouble(bufferIndex);
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		default:
+			FieldType fieldType = fieldTypes[sample];
+			for (int i = 0; i < count; i++) {
+				values[index] = readSampleDouble(buffer, fieldType,
+						bufferIndex);
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Write consecutive values of a single sample in a row from doubles. The
+	 * field type is resolved once for the whole run of values.
+	 * 
+	 * @param sample
+	 *            sample index
+	 * @param x
+	 *            x coordinate of the first value
+	 * @param y
+	 *            y coordinate
+	 * @param count
+	 *            number of values to write
+	 * @param values
+	 *            values to write
+	 * @param offset
+	 *            index in values of the first value
+	 * @param stride
+	 *            distance in values between two consecutive values
+	 */
+	public void writeSamples(int sample, int x, int y, int count,
+			double[] values, int offset, int stride) {
+		validateSample(sample);
+		ByteBuffer buffer = sampleBuffer(sample);
+		int bufferIndex = sampleBufferIndex(sample, x, y);
+		int bufferStride = sampleBufferStride(sample);
+		int index = offset;
+		switch (fieldTypes[sample]) {
+		case FLOAT:
+			for (int i = 0; i < count; i++) {
+				buffer.putFloat(bufferIndex, (float) values[index]);
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		default:
+			FieldType fieldType = fieldTypes[sample];
+			for (int i = 0; i < count; i++) {
+				writeSampleDouble(buffer, fieldType, bufferIndex,
+						values[index]);
+				bufferIndex += bufferStride;
+				index += stride;
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Read all interleaved sample values of a row as doubles
+	 * 
+	 * @param y
+	 *            y coordinate
+	 * @param values
+	 *            array of at least width * samples per pixel values, or
+	 *            null to create one
+	 * @return row values
+	 */
+	public double[] readRowAsDoubles(int y, double[] values) {
+		int samplesPerPixel = getSamplesPerPixel();
+		if (values == null) {
+			values = new double[width * samplesPerPixel];
+		}
+		for (int sample = 0; sample < samplesPerPixel; sample++) {
+			readSamples(sample, 0, y, width, values, sample, samplesPerPixel);
+		}
+		return values;
+	}
+
+	/**
+	 * Read all interleaved sample values of a row as floats
+	 * 
+	 * @param y
+	 *            y coordinate
+	 * @param values
+	 *            array of at least width * samples per pixel values, or
+	 *            null to create one
+	 * @return row values
+	 */
+	public float[] readRowAsFloats(int y, float[] values) {
+		int samplesPerPixel = getSamplesPerPixel();
+		if (values == null) {
+			values = new float[width * samplesPerPixel];
+		}
+		for (int sample = 0; sample < samplesPerPixel; sample++) {
+			ByteBuffer buffer = sampleBuffer(sample);
+			FieldType fieldType = fieldTypes[sample];
+			int bufferIndex = sampleBufferIndex(sample, 0, y);
+			int bufferStride = sampleBufferStride(sample);
+			int index = sample;
+			if (fieldType == FieldType.FLOAT) {
+				for (int x = 0; x < width; x++) {
+					values[index] = buffer.getFloat(bufferIndex);
+					bufferIndex += bufferStride;
+					index += samplesPerPixel;
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					values[index] = (float) readSampleDouble(buffer,
+							fieldType, bufferIndex);
+					bufferIndex += bufferStride;
+					index += samplesPerPixel;
+				}
+			}
+		}
+		return values;
+	}
+
 	/**
 	 * Get the sample index location
 	 * 
@@ -963,6 +1196,129 @@ public class Rasters {
 		return rowsPerStrip;
 	}
 
+	/**
+	 * Get the buffer holding the values of a sample
+	 * 
+	 * @param sample
+	 *            sample index
+	 * @return sample buffer or interleaved buffer
+	 */
+	private ByteBuffer sampleBuffer(int sample) {
+		return sampleValues != null ? sampleValues[sample] : interleaveValues;
+	}
+
+	/**
+	 * Get the byte index of a sample value in its buffer
+	 * 
+	 * @param sample
+	 *            sample index
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return byte index
+	 */
+	private int sampleBufferIndex(int sample, int x, int y) {
+		if (sampleValues != null) {
+			return getSampleIndex(x, y) * fieldTypes[sample].getBytes();
+		}
+		int bufferIndex = getInterleaveIndex(x, y);
+		for (int i = 0; i < sample; i++) {
+			bufferIndex += fieldTypes[i].getBytes();
+		}
+		return bufferIndex;
+	}
+
+	/**
+	 * Get the byte distance between two horizontally adjacent values of a
+	 * sample
+	 * 
+	 * @param sample
+	 *            sample index
+	 * @return byte stride
+	 */
+	private int sampleBufferStride(int sample) {
+		return sampleValues != null ? fieldTypes[sample].getBytes()
+				: sizePixel();
+	}
+
+	/**
+	 * Reads sample at an absolute index of the given buffer without
+	 * changing the buffer position
+	 * 
+	 * @param buffer
+	 *            buffer to read from
+	 * @param fieldType
+	 *            field type to be read
+	 * @param index
+	 *            byte index
+	 * @return sample value
+	 */
+	private static double readSampleDouble(ByteBuffer buffer,
+			FieldType fieldType, int index) {
+		switch (fieldType) {
+		case BYTE:
+			return buffer.get(index) & 0xff;
+		case SHORT:
+			return buffer.getShort(index) & 0xffff;
+		case LONG:
+			return buffer.getInt(index) & 0xffffffffL;
+		case SBYTE:
+			return buffer.get(index);
+		case SSHORT:
+			return buffer.getShort(index);
+		case SLONG:
+			return buffer.getInt(index);
+		case FLOAT:
+			return buffer.getFloat(index);
+		case DOUBLE:
+			return buffer.getDouble(index);
+		default:
+			throw new TiffException("Unsupported raster field type: "
+					+ fieldType);
+		}
+	}
+
+	/**
+	 * Writes sample at an absolute index of the given buffer without
+	 * changing the buffer position
+	 * 
+	 * @param buffer
+	 *            buffer to write to
+	 * @param fieldType
+	 *            field type to be written
+	 * @param index
+	 *            byte index
+	 * @param value
+	 *            sample value
+	 */
+	private static void writeSampleDouble(ByteBuffer buffer,
+			FieldType fieldType, int index, double value) {
+		switch (fieldType) {
+		case BYTE:
+		case SBYTE:
+			buffer.put(index, (byte) (int) value);
+			break;
+		case SHORT:
+		case SSHORT:
+			buffer.putShort(index, (short) (int) value);
+			break;
+		case LONG:
+		case SLONG:
+			buffer.putInt(index, (int) value);
+			break;
+		case FLOAT:
+			buffer.putFloat(index, (float) value);
+			break;
+		case DOUBLE:
+			buffer.putDouble(index, value);
+			break;
+		default:
+			throw new TiffException("Unsupported raster field type: "
+					+ fieldType);
+		}
+	}
+
 	/**
 	 * Reads sample from given buffer
 	 *
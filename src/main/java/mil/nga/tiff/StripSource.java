@@ -0,0 +1,25 @@
+package mil.nga.tiff;
+
+import java.io.IOException;
+
+/**
+ * Source of image rows for streaming TIFF writes. Instead of holding the full
+ * {@link Rasters} of an image in memory, the {@link TiffWriter} requests the
+ * rows of one strip at a time and encodes them directly to the output.
+ */
+public interface StripSource {
+
+	/**
+	 * Read the rows of a strip into the provided rasters
+	 * 
+	 * @param y
+	 *            image row of the first strip row
+	 * @param rasters
+	 *            strip rasters to populate, {@link Rasters#getHeight()} rows
+	 *            of the full image width
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	void readStrip(int y, Rasters rasters) throws IOException;
+
+}
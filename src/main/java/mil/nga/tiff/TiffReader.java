@@ -10,6 +10,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedSet;
@@ -53,6 +56,49 @@ public class TiffReader {
 		return tiffImage;
 	}
 
+	/**
+	 * Read a TIFF from a memory mapped file. The file bytes are not copied,
+	 * tiles and strips are only read and decoded when the rasters are read.
+	 * 
+	 * @param file
+	 *            TIFF file
+	 * @return TIFF image
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	public static TIFFImage readTiffMapped(File file) throws IOException {
+		return readTiffMapped(file, false);
+	}
+
+	/**
+	 * Read a TIFF from a memory mapped file. The file bytes are not copied,
+	 * tiles and strips are only read and decoded when the rasters are read.
+	 * 
+	 * @param file
+	 *            TIFF file
+	 * @param cache
+	 *            true to cache tiles and strips
+	 * @return TIFF image
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	public static TIFFImage readTiffMapped(File file, boolean cache)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new TiffException(
+						"TIFF file is too large to memory map: " + size);
+			}
+			MappedByteBuffer bytes = channel
+					.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			ByteReader reader = new ByteReader(bytes);
+			TIFFImage tiffImage = readTiff(reader, cache);
+			return tiffImage;
+		}
+	}
+
 	/**
 	 * Read a TIFF from an input stream
 	 * 
@@ -4,6 +4,7 @@ import mil.nga.tiff.compression.CompressionEncoder;
 import mil.nga.tiff.compression.DeflateCompression;
 import mil.nga.tiff.compression.LZWCompression;
 import mil.nga.tiff.compression.PackbitsCompression;
+import mil.nga.tiff.compression.Predictor;
 import mil.nga.tiff.compression.RawCompression;
 import mil.nga.tiff.io.ByteWriter;
 import mil.nga.tiff.io.IOUtils;
@@ -11,12 +12,22 @@ import mil.nga.tiff.util.TiffConstants;
 import mil.nga.tiff.util.TiffException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * TIFF Writer.
@@ -33,10 +44,28 @@ import java.util.List;
  * {@link Rasters#calculateRowsPerStrip(int, int)} methods provide a mechanism
  * for determining a {@link FileDirectory#getRowsPerStrip()} setting.
  * 
+ * Writing to a {@link File}, {@link FileChannel} or {@link OutputStream}
+ * streams the image: the directory offsets are computed up front and the
+ * strips are encoded in small concurrent batches and written in order, so at
+ * most one batch of encoded strips is held in memory. The rows may come from the
+ * {@link FileDirectory#getWriteRasters()} or, to avoid holding the full image
+ * in memory, from a {@link FileDirectory#getWriteStripSource()}.
+ * 
  * @author osbornb
  */
 public class TiffWriter {
 
+	/**
+	 * Number of strips encoded concurrently before being written in order
+	 */
+	private static final int STRIP_BATCH_SIZE = 4 * Math.max(1,
+			ForkJoinPool.getCommonPoolParallelism());
+
+	/**
+	 * Largest strip byte count that can be written as a short
+	 */
+	private static final int MAX_SHORT_STRIP_BYTE_COUNT = 0xffff;
+
 	/**
 	 * Write a TIFF to a file
 	 * 
@@ -49,9 +78,82 @@ public class TiffWriter {
 	 */
 	public static void writeTiff(File file, TIFFImage tiffImage)
 			throws IOException {
-		ByteWriter writer = new ByteWriter();
-		writeTiff(file, writer, tiffImage);
-		writer.close();
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeTiff(channel, tiffImage);
+		}
+	}
+
+	/**
+	 * Stream a TIFF to a file channel in native byte order, starting at the
+	 * current channel position
+	 * 
+	 * @param channel
+	 *            file channel
+	 * @param tiffImage
+	 *            TIFF image
+	 * @throws IOException
+	 *             upon failure to write
+	 */
+	public static void writeTiff(FileChannel channel, TIFFImage tiffImage)
+			throws IOException {
+		writeTiff(channel, ByteOrder.nativeOrder(), tiffImage);
+	}
+
+	/**
+	 * Stream a TIFF to a file channel, starting at the current channel
+	 * position. Compressed strip byte counts are patched into the directory
+	 * after the strips have been written.
+	 * 
+	 * @param channel
+	 *            file channel
+	 * @param byteOrder
+	 *            byte order
+	 * @param tiffImage
+	 *            TIFF image
+	 * @throws IOException
+	 *             upon failure to write
+	 */
+	public static void writeTiff(FileChannel channel, ByteOrder byteOrder,
+			TIFFImage tiffImage) throws IOException {
+		writeTiff(channel, channel, byteOrder, tiffImage);
+	}
+
+	/**
+	 * Stream a TIFF to an output stream in native byte order
+	 * 
+	 * @param outputStream
+	 *            output stream
+	 * @param tiffImage
+	 *            TIFF image
+	 * @throws IOException
+	 *             upon failure to write
+	 */
+	public static void writeTiff(OutputStream outputStream,
+			TIFFImage tiffImage) throws IOException {
+		writeTiff(outputStream, ByteOrder.nativeOrder(), tiffImage);
+	}
+
+	/**
+	 * Stream a TIFF to an output stream. As the stream can not be
+	 * repositioned, compressed strips are encoded twice: once to determine
+	 * the strip byte counts and once to write them.
+	 * 
+	 * @param outputStream
+	 *            output stream
+	 * @param byteOrder
+	 *            byte order
+	 * @param tiffImage
+	 *            TIFF image
+	 * @throws IOException
+	 *             upon failure to write
+	 */
+	public static void writeTiff(OutputStream outputStream,
+			ByteOrder byteOrder, TIFFImage tiffImage) throws IOException {
+		writeTiff(Channels.newChannel(outputStream), null, byteOrder,
+				tiffImage);
+		outputStream.flush();
 	}
 
 	/**
@@ -121,6 +223,124 @@ public class TiffWriter {
 	public static void writeTiff(ByteWriter writer, TIFFImage tiffImage)
 			throws IOException {
 
+		// Write the TIFF header
+		writeHeader(writer);
+
+		// Write the TIFF Image
+		writeImageFileDirectories(writer, tiffImage);
+	}
+
+	/**
+	 * Stream a TIFF to a channel
+	 * 
+	 * @param channel
+	 *            channel to write to
+	 * @param fileChannel
+	 *            file channel for patching written directories, null if the
+	 *            channel can not be repositioned
+	 * @param byteOrder
+	 *            byte order
+	 * @param tiffImage
+	 *            TIFF image
+	 * @throws IOException
+	 *             upon failure to write
+	 */
+	private static void writeTiff(WritableByteChannel channel,
+			FileChannel fileChannel, ByteOrder byteOrder, TIFFImage tiffImage)
+			throws IOException {
+
+		long start = fileChannel != null ? fileChannel.position() : 0;
+
+		ByteWriter headerWriter = new ByteWriter(byteOrder);
+		writeHeader(headerWriter);
+		writeBytes(channel, headerWriter.getBytes());
+		headerWriter.close();
+
+		long position = TiffConstants.HEADER_BYTES;
+
+		List<FileDirectory> fileDirectories = tiffImage.getFileDirectories();
+		for (int i = 0; i < fileDirectories.size(); i++) {
+			FileDirectory fileDirectory = fileDirectories.get(i);
+			boolean lastDirectory = i + 1 == fileDirectories.size();
+
+			// Populate strip entries with placeholder values so the sizes come
+			// out correctly
+			populateRasterEntries(fileDirectory);
+
+			long startOfDirectory = position;
+			long afterValues = startOfDirectory
+					+ fileDirectory.sizeWithValues();
+
+			StripEncoder stripEncoder = new StripEncoder(fileDirectory,
+					byteOrder);
+
+			// Determine the strip byte counts up front if possible, otherwise
+			// patch the directory after writing the strips
+			long[] stripByteCounts = stripEncoder.predictByteCounts();
+			if (stripByteCounts == null && fileChannel == null) {
+				stripByteCounts = stripEncoder.measureByteCounts();
+			}
+			boolean patchDirectory = stripByteCounts == null;
+
+			long stripsBytes = 0;
+			if (!patchDirectory) {
+				stripsBytes = setStripEntries(fileDirectory, stripEncoder,
+						afterValues, stripByteCounts);
+			}
+			writeBytes(channel, fileDirectoryBytes(byteOrder, fileDirectory,
+					startOfDirectory, lastDirectory ? 0 : afterValues
+							+ stripsBytes));
+
+			// Encode a batch of strips concurrently and write them in order
+			long[] writtenByteCounts = new long[stripEncoder.getStrips()];
+			long writtenBytes = 0;
+			for (int batch = 0; batch < writtenByteCounts.length; batch += STRIP_BATCH_SIZE) {
+				int batchEnd = Math.min(batch + STRIP_BATCH_SIZE,
+						writtenByteCounts.length);
+				byte[][] batchBytes = stripEncoder.encode(batch, batchEnd);
+				for (int index = batch; index < batchEnd; index++) {
+					int strip = stripEncoder.getStrip(index);
+					byte[] stripBytes = batchBytes[index - batch];
+					if (!patchDirectory
+							&& stripBytes.length != stripByteCounts[strip]) {
+						throw new TiffException(
+								"Unexpected strip bytes written. Expected: "
+										+ stripByteCounts[strip]
+										+ ", Actual: " + stripBytes.length);
+					}
+					writeBytes(channel, stripBytes);
+					writtenByteCounts[strip] = stripBytes.length;
+					writtenBytes += stripBytes.length;
+				}
+			}
+
+			if (patchDirectory) {
+				setStripEntries(fileDirectory, stripEncoder, afterValues,
+						writtenByteCounts);
+				byte[] directoryBytes = fileDirectoryBytes(byteOrder,
+						fileDirectory, startOfDirectory, lastDirectory ? 0
+								: afterValues + writtenBytes);
+				ByteBuffer buffer = ByteBuffer.wrap(directoryBytes);
+				long directoryPosition = start + startOfDirectory;
+				while (buffer.hasRemaining()) {
+					directoryPosition += fileChannel.write(buffer,
+							directoryPosition);
+				}
+			}
+
+			position = afterValues + writtenBytes;
+		}
+	}
+
+	/**
+	 * Write the TIFF header
+	 * 
+	 * @param writer
+	 *            byte writer
+	 * @throws IOException
+	 */
+	private static void writeHeader(ByteWriter writer) throws IOException {
+
 		// Write the byte order (bytes 0-1)
 		String byteOrder = writer.getByteOrder() == ByteOrder.BIG_ENDIAN ? TiffConstants.BYTE_ORDER_BIG_ENDIAN
 				: TiffConstants.BYTE_ORDER_LITTLE_ENDIAN;
@@ -132,9 +352,23 @@ public class TiffWriter {
 		// Write the first IFD offset (bytes 4-7), set to start right away at
 		// byte 8
 		writer.writeUnsignedInt(TiffConstants.HEADER_BYTES);
+	}
 
-		// Write the TIFF Image
-		writeImageFileDirectories(writer, tiffImage);
+	/**
+	 * Write all remaining bytes to a channel
+	 * 
+	 * @param channel
+	 *            channel
+	 * @param bytes
+	 *            bytes to write
+	 * @throws IOException
+	 */
+	private static void writeBytes(WritableByteChannel channel, byte[] bytes)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
 	}
 
 	/**
@@ -159,20 +393,9 @@ public class TiffWriter {
 
 			// Track of the starting byte of this directory
 			int startOfDirectory = writer.size();
-			long afterDirectory = startOfDirectory + fileDirectory.size();
 			long afterValues = startOfDirectory
 					+ fileDirectory.sizeWithValues();
 
-			// Write the number of directory entries
-			writer.writeUnsignedShort(fileDirectory.numEntries());
-
-			List<FileDirectoryEntry> entryValues = new ArrayList<>();
-
-			// Byte to write the next values
-			long nextByte = afterDirectory;
-
-			List<Long> valueBytesCheck = new ArrayList<>();
-
 			// Write the raster bytes to temporary storage
 			if (fileDirectory.isTiled()) {
 				throw new TiffException("Tiled images are not supported");
@@ -182,65 +405,127 @@ public class TiffWriter {
 			byte[] rastersBytes = writeRasters(writer.getByteOrder(),
 					fileDirectory, afterValues);
 
-			// Write each entry
-			for (FileDirectoryEntry entry : fileDirectory.getEntries()) {
-				writer.writeUnsignedShort(entry.getFieldTag().getId());
-				writer.writeUnsignedShort(entry.getFieldType().getValue());
-				writer.writeUnsignedInt(entry.getTypeCount());
-				long valueBytes = entry.getFieldType().getBytes()
-						* entry.getTypeCount();
-				if (valueBytes > 4) {
-					// Write the value offset
-					entryValues.add(entry);
-					writer.writeUnsignedInt(nextByte);
-					valueBytesCheck.add(nextByte);
-					nextByte += entry.sizeOfValues();
-				} else {
-					// Write the value in the inline 4 byte space, left aligned
-					int bytesWritten = writeValues(writer, entry);
-					if (bytesWritten != valueBytes) {
-						throw new TiffException(
-								"Unexpected bytes written. Expected: "
-										+ valueBytes + ", Actual: "
-										+ bytesWritten);
-					}
-					writeFillerBytes(writer, 4 - valueBytes);
-				}
+			long nextFileDirectory = 0;
+			if (i + 1 < tiffImage.getFileDirectories().size()) {
+				// The start address of the next file directory
+				nextFileDirectory = afterValues + rastersBytes.length;
 			}
 
-			if (i + 1 == tiffImage.getFileDirectories().size()) {
-				// Write 0's since there are not more file directories
-				writeFillerBytes(writer, 4);
-			} else {
-				// Write the start address of the next file directory
-				long nextFileDirectory = afterValues + rastersBytes.length;
-				writer.writeUnsignedInt(nextFileDirectory);
-			}
+			// Write the directory, entries and external entry values
+			writeFileDirectory(writer, fileDirectory, startOfDirectory,
+					nextFileDirectory);
 
-			// Write the external entry values
-			for (int entryIndex = 0; entryIndex < entryValues.size(); entryIndex++) {
-				FileDirectoryEntry entry = entryValues.get(entryIndex);
-				long entryValuesByte = valueBytesCheck.get(entryIndex);
-				if (entryValuesByte != writer.size()) {
-					throw new TiffException(
-							"Entry values byte does not match the write location. Entry Values Byte: "
-									+ entryValuesByte + ", Current Byte: "
-									+ writer.size());
-				}
+			// Write the image bytes
+			writer.writeBytes(rastersBytes);
+		}
+
+	}
+
+	/**
+	 * Write the file directory entries and external entry values to bytes
+	 * 
+	 * @param byteOrder
+	 *            byte order
+	 * @param fileDirectory
+	 *            file directory
+	 * @param startOfDirectory
+	 *            file position of the directory
+	 * @param nextFileDirectory
+	 *            file position of the next directory, 0 for the last
+	 * @return directory bytes
+	 * @throws IOException
+	 */
+	private static byte[] fileDirectoryBytes(ByteOrder byteOrder,
+			FileDirectory fileDirectory, long startOfDirectory,
+			long nextFileDirectory) throws IOException {
+		ByteWriter writer = new ByteWriter(byteOrder);
+		writeFileDirectory(writer, fileDirectory, startOfDirectory,
+				nextFileDirectory);
+		byte[] bytes = writer.getBytes();
+		writer.close();
+		return bytes;
+	}
+
+	/**
+	 * Write the file directory entries and external entry values
+	 * 
+	 * @param writer
+	 *            byte writer
+	 * @param fileDirectory
+	 *            file directory
+	 * @param startOfDirectory
+	 *            file position of the directory
+	 * @param nextFileDirectory
+	 *            file position of the next directory, 0 for the last
+	 * @throws IOException
+	 */
+	private static void writeFileDirectory(ByteWriter writer,
+			FileDirectory fileDirectory, long startOfDirectory,
+			long nextFileDirectory) throws IOException {
+
+		// File position of the first byte in the writer
+		long writerOffset = startOfDirectory - writer.size();
+		long afterDirectory = startOfDirectory + fileDirectory.size();
+
+		// Write the number of directory entries
+		writer.writeUnsignedShort(fileDirectory.numEntries());
+
+		List<FileDirectoryEntry> entryValues = new ArrayList<>();
+
+		// Byte to write the next values
+		long nextByte = afterDirectory;
+
+		List<Long> valueBytesCheck = new ArrayList<>();
+
+		// Write each entry
+		for (FileDirectoryEntry entry : fileDirectory.getEntries()) {
+			writer.writeUnsignedShort(entry.getFieldTag().getId());
+			writer.writeUnsignedShort(entry.getFieldType().getValue());
+			writer.writeUnsignedInt(entry.getTypeCount());
+			long valueBytes = entry.getFieldType().getBytes()
+					* entry.getTypeCount();
+			if (valueBytes > 4) {
+				// Write the value offset
+				entryValues.add(entry);
+				writer.writeUnsignedInt(nextByte);
+				valueBytesCheck.add(nextByte);
+				nextByte += entry.sizeOfValues();
+			} else {
+				// Write the value in the inline 4 byte space, left aligned
 				int bytesWritten = writeValues(writer, entry);
-				long valueBytes = entry.getFieldType().getBytes()
-						* entry.getTypeCount();
 				if (bytesWritten != valueBytes) {
 					throw new TiffException(
-							"Unexpected bytes written. Expected: " + valueBytes
-									+ ", Actual: " + bytesWritten);
+							"Unexpected bytes written. Expected: "
+									+ valueBytes + ", Actual: "
+									+ bytesWritten);
 				}
+				writeFillerBytes(writer, 4 - valueBytes);
 			}
-
-			// Write the image bytes
-			writer.writeBytes(rastersBytes);
 		}
 
+		// Write the start address of the next file directory, 0's if there
+		// are no more file directories
+		writer.writeUnsignedInt(nextFileDirectory);
+
+		// Write the external entry values
+		for (int entryIndex = 0; entryIndex < entryValues.size(); entryIndex++) {
+			FileDirectoryEntry entry = entryValues.get(entryIndex);
+			long entryValuesByte = valueBytesCheck.get(entryIndex);
+			if (entryValuesByte != writerOffset + writer.size()) {
+				throw new TiffException(
+						"Entry values byte does not match the write location. Entry Values Byte: "
+								+ entryValuesByte + ", Current Byte: "
+								+ (writerOffset + writer.size()));
+			}
+			int bytesWritten = writeValues(writer, entry);
+			long valueBytes = entry.getFieldType().getBytes()
+					* entry.getTypeCount();
+			if (bytesWritten != valueBytes) {
+				throw new TiffException(
+						"Unexpected bytes written. Expected: " + valueBytes
+								+ ", Actual: " + bytesWritten);
+			}
+		}
 	}
 
 	/**
@@ -252,10 +537,10 @@ public class TiffWriter {
 	 */
 	private static void populateRasterEntries(FileDirectory fileDirectory) {
 
-		Rasters rasters = fileDirectory.getWriteRasters();
-		if (rasters == null) {
+		if (fileDirectory.getWriteRasters() == null
+				&& fileDirectory.getWriteStripSource() == null) {
 			throw new TiffException(
-					"File Directory Writer Rasters is required to create a TIFF");
+					"File Directory Writer Rasters or Strip Source is required to create a TIFF");
 		}
 
 		// Populate the raster entries
@@ -285,8 +570,39 @@ public class TiffWriter {
 
 		fileDirectory.setStripOffsetsAsLongs(new ArrayList<>(Collections
 				.nCopies(strips, 0l)));
-		fileDirectory.setStripByteCounts(new ArrayList<>(Collections.nCopies(
-				strips, 0)));
+		if (isLongStripByteCounts(fileDirectory)) {
+			fileDirectory.setStripByteCountsAsLongs(new ArrayList<>(
+					Collections.nCopies(strips, 0l)));
+		} else {
+			fileDirectory.setStripByteCounts(new ArrayList<>(Collections
+					.nCopies(strips, 0)));
+		}
+	}
+
+	/**
+	 * Determine if the strip byte counts need to be written as longs. The
+	 * type is decided before encoding, so the uncompressed strip size is
+	 * doubled to leave room for compression expanding the data.
+	 * 
+	 * @param fileDirectory
+	 *            file directory
+	 * @return true for long strip byte counts
+	 */
+	private static boolean isLongStripByteCounts(FileDirectory fileDirectory) {
+		List<Integer> bitsPerSample = fileDirectory.getBitsPerSample();
+		long rowBits = 0;
+		for (int sample = 0; sample < fileDirectory.getSamplesPerPixel(); sample++) {
+			int bits = bitsPerSample.get(sample < bitsPerSample.size() ? sample
+					: 0);
+			if (fileDirectory.getPlanarConfiguration() == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
+				rowBits = Math.max(rowBits, bits);
+			} else {
+				rowBits += bits;
+			}
+		}
+		long stripBytes = fileDirectory.getImageWidth().longValue() * rowBits
+				/ 8 * fileDirectory.getRowsPerStrip().longValue();
+		return stripBytes * 2 > MAX_SHORT_STRIP_BYTE_COUNT;
 	}
 
 	/**
@@ -304,25 +620,31 @@ public class TiffWriter {
 	private static byte[] writeRasters(ByteOrder byteOrder,
 			FileDirectory fileDirectory, long offset) throws IOException {
 
-		Rasters rasters = fileDirectory.getWriteRasters();
-		if (rasters == null) {
-			throw new TiffException(
-					"File Directory Writer Rasters is required to create a TIFF");
+		if (fileDirectory.isTiled()) {
+			throw new TiffException("Tiled images are not supported");
 		}
 
-		// Get the compression encoder
-		CompressionEncoder encoder = getEncoder(fileDirectory);
+		StripEncoder stripEncoder = new StripEncoder(fileDirectory, byteOrder);
 
 		// Byte writer to write the raster
 		ByteWriter writer = new ByteWriter(byteOrder);
 
-		// Write the rasters
-		if (!fileDirectory.isTiled()) {
-			writeStripRasters(writer, fileDirectory, offset, encoder);
-		} else {
-			throw new TiffException("Tiled images are not supported");
+		// Write each strip, encoding batches of strips concurrently
+		long[] stripByteCounts = new long[stripEncoder.getStrips()];
+		for (int batch = 0; batch < stripByteCounts.length; batch += STRIP_BATCH_SIZE) {
+			int batchEnd = Math.min(batch + STRIP_BATCH_SIZE,
+					stripByteCounts.length);
+			byte[][] batchBytes = stripEncoder.encode(batch, batchEnd);
+			for (int position = batch; position < batchEnd; position++) {
+				writer.writeBytes(batchBytes[position - batch]);
+				stripByteCounts[stripEncoder.getStrip(position)] = batchBytes[position
+						- batch].length;
+			}
 		}
 
+		// Set the strip offsets and byte counts
+		setStripEntries(fileDirectory, stripEncoder, offset, stripByteCounts);
+
 		// Return the rasters bytes
 		byte[] bytes = writer.getBytes();
 		writer.close();
@@ -331,95 +653,53 @@ public class TiffWriter {
 	}
 
 	/**
-	 * Write the rasters as bytes
+	 * Set the strip offsets and byte counts of consecutively written strips
 	 * 
-	 * @param writer
-	 *            byte writer
 	 * @param fileDirectory
 	 *            file directory
+	 * @param stripEncoder
+	 *            strip encoder that determined the write order
 	 * @param offset
-	 *            byte offset
-	 * @param encoder
-	 *            compression encoder
-	 * @throws IOException
+	 *            byte offset of the first strip
+	 * @param stripByteCounts
+	 *            strip byte counts, by strip index
+	 * @return total strip bytes
 	 */
-	private static void writeStripRasters(ByteWriter writer,
-			FileDirectory fileDirectory, long offset, CompressionEncoder encoder)
-			throws IOException {
-
-		Rasters rasters = fileDirectory.getWriteRasters();
-
-		// Get the row and strip counts
-		int rowsPerStrip = fileDirectory.getRowsPerStrip().intValue();
-		int maxY = fileDirectory.getImageHeight().intValue();
-		int stripsPerSample = (maxY + rowsPerStrip - 1) / rowsPerStrip;
-		int strips = stripsPerSample;
-		if (fileDirectory.getPlanarConfiguration() == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
-			strips *= fileDirectory.getSamplesPerPixel();
+	private static long setStripEntries(FileDirectory fileDirectory,
+			StripEncoder stripEncoder, long offset, long[] stripByteCounts) {
+
+		long[] offsets = new long[stripByteCounts.length];
+		long totalBytes = 0;
+		for (int position = 0; position < stripByteCounts.length; position++) {
+			int strip = stripEncoder.getStrip(position);
+			offsets[strip] = offset + totalBytes;
+			totalBytes += stripByteCounts[strip];
 		}
 
-		// Build the strip offsets and byte counts
 		List<Long> stripOffsets = new ArrayList<>();
-		List<Integer> stripByteCounts = new ArrayList<>();
-
-		// Write each strip
-		for (int strip = 0; strip < strips; strip++) {
-
-			int startingY;
-			Integer sample = null;
-			if (fileDirectory.getPlanarConfiguration() == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
-				sample = strip / stripsPerSample;
-				startingY = (strip % stripsPerSample) * rowsPerStrip;
-			} else {
-				startingY = strip * rowsPerStrip;
-			}
-
-			// Write the strip of bytes
-			ByteWriter stripWriter = new ByteWriter(writer.getByteOrder());
-
-			int endingY = Math.min(startingY + rowsPerStrip, maxY);
-			for (int y = startingY; y < endingY; y++) {
-				// Get the row bytes and encode if needed
-				byte[] rowBytes = null;
-				if (sample != null) {
-					rowBytes = rasters.getSampleRow(y, sample,
-							writer.getByteOrder());
-				} else {
-					rowBytes = rasters.getPixelRow(y, writer.getByteOrder());
-				}
+		List<Long> stripByteCountList = new ArrayList<>();
+		for (int strip = 0; strip < stripByteCounts.length; strip++) {
+			stripOffsets.add(offsets[strip]);
+			stripByteCountList.add(stripByteCounts[strip]);
+		}
 
-				if (encoder.rowEncoding()) {
-					rowBytes = encoder.encode(rowBytes, writer.getByteOrder());
+		fileDirectory.setStripOffsetsAsLongs(stripOffsets);
+		if (isLongStripByteCounts(fileDirectory)) {
+			fileDirectory.setStripByteCountsAsLongs(stripByteCountList);
+		} else {
+			List<Integer> shortByteCounts = new ArrayList<>();
+			for (long stripByteCount : stripByteCountList) {
+				if (stripByteCount > MAX_SHORT_STRIP_BYTE_COUNT) {
+					throw new TiffException(
+							"Strip byte count exceeds short range: "
+									+ stripByteCount);
 				}
-
-				// Write the row
-				stripWriter.writeBytes(rowBytes);
-			}
-
-			// Get the strip bytes and encode if needed
-			byte[] stripBytes = stripWriter.getBytes();
-			stripWriter.close();
-			if (!encoder.rowEncoding()) {
-				stripBytes = encoder.encode(stripBytes, writer.getByteOrder());
+				shortByteCounts.add((int) stripByteCount);
 			}
-
-			// Write the strip bytes
-			writer.writeBytes(stripBytes);
-
-			// Add the strip byte count
-			int bytesWritten = stripBytes.length;
-			stripByteCounts.add(bytesWritten);
-
-			// Add the strip offset
-			stripOffsets.add(offset);
-			offset += bytesWritten;
-
+			fileDirectory.setStripByteCounts(shortByteCounts);
 		}
 
-		// Set the strip offsets and byte counts
-		fileDirectory.setStripOffsetsAsLongs(stripOffsets);
-		fileDirectory.setStripByteCounts(stripByteCounts);
-
+		return totalBytes;
 	}
 
 	/**
@@ -462,7 +742,9 @@ public class TiffWriter {
 					+ compression);
 		case TiffConstants.COMPRESSION_DEFLATE:
 		case TiffConstants.COMPRESSION_PKZIP_DEFLATE:
-			encoder = new DeflateCompression();
+			Integer level = fileDirectory.getWriteCompressionLevel();
+			encoder = level != null ? new DeflateCompression(level)
+					: new DeflateCompression();
 			break;
 		case TiffConstants.COMPRESSION_PACKBITS:
 			encoder = new PackbitsCompression();
@@ -578,4 +860,323 @@ public class TiffWriter {
 		return bytesWritten;
 	}
 
+	/**
+	 * Encodes the strips of a file directory one at a time from the write
+	 * rasters or the write strip source
+	 */
+	private static class StripEncoder {
+
+		/**
+		 * File directory
+		 */
+		private final FileDirectory fileDirectory;
+
+		/**
+		 * Byte order
+		 */
+		private final ByteOrder byteOrder;
+
+		/**
+		 * Compression encoder
+		 */
+		private final CompressionEncoder encoder;
+
+		/**
+		 * Full image rasters, null when streaming from the strip source
+		 */
+		private final Rasters rasters;
+
+		/**
+		 * Field type for each sample
+		 */
+		private final FieldType[] fieldTypes;
+
+		/**
+		 * Image width
+		 */
+		private final int width;
+
+		/**
+		 * Image height
+		 */
+		private final int height;
+
+		/**
+		 * Rows per strip
+		 */
+		private final int rowsPerStrip;
+
+		/**
+		 * Strips per sample
+		 */
+		private final int stripsPerSample;
+
+		/**
+		 * Planar configuration flag
+		 */
+		private final boolean planar;
+
+		/**
+		 * Predictor
+		 */
+		private final int predictor;
+
+		/**
+		 * Reused rasters of the last strip read from the strip source
+		 */
+		private Rasters stripRasters;
+
+		/**
+		 * First image row of the strip rasters
+		 */
+		private int stripRastersY = -1;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param fileDirectory
+		 *            file directory
+		 * @param byteOrder
+		 *            byte order
+		 */
+		StripEncoder(FileDirectory fileDirectory, ByteOrder byteOrder) {
+			this.fileDirectory = fileDirectory;
+			this.byteOrder = byteOrder;
+			this.encoder = getEncoder(fileDirectory);
+			this.rasters = fileDirectory.getWriteRasters();
+			this.width = fileDirectory.getImageWidth().intValue();
+			this.height = fileDirectory.getImageHeight().intValue();
+			this.rowsPerStrip = fileDirectory.getRowsPerStrip().intValue();
+			this.stripsPerSample = (height + rowsPerStrip - 1) / rowsPerStrip;
+			this.planar = fileDirectory.getPlanarConfiguration() == TiffConstants.PLANAR_CONFIGURATION_PLANAR;
+			Integer predictor = fileDirectory.getPredictor();
+			this.predictor = predictor != null ? predictor
+					: TiffConstants.PREDICTOR_NO;
+			if (rasters != null) {
+				fieldTypes = rasters.getFieldTypes();
+			} else {
+				fieldTypes = new FieldType[fileDirectory.getSamplesPerPixel()];
+				for (int i = 0; i < fieldTypes.length; i++) {
+					fieldTypes[i] = fileDirectory.getFieldTypeForSample(i);
+				}
+			}
+		}
+
+		/**
+		 * Get the number of strips
+		 * 
+		 * @return strips
+		 */
+		int getStrips() {
+			return planar ? stripsPerSample * fieldTypes.length
+					: stripsPerSample;
+		}
+
+		/**
+		 * Get the strip written at a position. Planar strips read from the
+		 * strip source are written row band by row band, with the sample
+		 * planes of a band next to each other, so that each band is read
+		 * from the source only once.
+		 * 
+		 * @param position
+		 *            write position
+		 * @return strip index
+		 */
+		int getStrip(int position) {
+			if (!planar || rasters != null) {
+				return position;
+			}
+			int band = position / fieldTypes.length;
+			int sample = position % fieldTypes.length;
+			return sample * stripsPerSample + band;
+		}
+
+		/**
+		 * Predict the strip byte counts without encoding
+		 * 
+		 * @return strip byte counts, null if they depend on the compression
+		 */
+		long[] predictByteCounts() {
+			if (!(encoder instanceof RawCompression)) {
+				return null;
+			}
+			long pixelBytes = 0;
+			for (FieldType fieldType : fieldTypes) {
+				pixelBytes += fieldType.getBytes();
+			}
+			long[] stripByteCounts = new long[getStrips()];
+			for (int strip = 0; strip < stripByteCounts.length; strip++) {
+				int startingY = (strip % stripsPerSample) * rowsPerStrip;
+				int rows = Math.min(rowsPerStrip, height - startingY);
+				long rowBytes = planar ? (long) width
+						* fieldTypes[strip / stripsPerSample].getBytes()
+						: width * pixelBytes;
+				stripByteCounts[strip] = rows * rowBytes;
+			}
+			return stripByteCounts;
+		}
+
+		/**
+		 * Measure the strip byte counts by encoding each strip
+		 * 
+		 * @return strip byte counts
+		 * @throws IOException
+		 */
+		long[] measureByteCounts() throws IOException {
+			long[] stripByteCounts = new long[getStrips()];
+			for (int batch = 0; batch < stripByteCounts.length; batch += STRIP_BATCH_SIZE) {
+				int batchEnd = Math.min(batch + STRIP_BATCH_SIZE,
+						stripByteCounts.length);
+				byte[][] batchBytes = encode(batch, batchEnd);
+				for (int position = batch; position < batchEnd; position++) {
+					stripByteCounts[getStrip(position)] = batchBytes[position
+							- batch].length;
+				}
+			}
+			return stripByteCounts;
+		}
+
+		/**
+		 * Encode a range of write positions, see {@link #getStrip(int)}.
+		 * The rows are read in order, the strips are compressed concurrently.
+		 * 
+		 * @param fromPosition
+		 *            first write position, inclusive
+		 * @param toPosition
+		 *            last write position, exclusive
+		 * @return encoded strip bytes in write order
+		 * @throws IOException
+		 */
+		byte[][] encode(int fromPosition, int toPosition) throws IOException {
+			byte[][] stripBytes = new byte[toPosition - fromPosition][];
+			for (int position = fromPosition; position < toPosition; position++) {
+				stripBytes[position - fromPosition] = readStripBytes(getStrip(position));
+			}
+			if (encoder instanceof RawCompression
+					&& predictor == TiffConstants.PREDICTOR_NO) {
+				return stripBytes;
+			}
+			IntStream.range(0, stripBytes.length).parallel()
+					.forEach(i -> stripBytes[i] = compress(
+							getStrip(fromPosition + i), stripBytes[i]));
+			return stripBytes;
+		}
+
+		/**
+		 * Read the uncompressed bytes of a strip
+		 * 
+		 * @param strip
+		 *            strip index
+		 * @return strip bytes
+		 * @throws IOException
+		 */
+		private byte[] readStripBytes(int strip) throws IOException {
+
+			int startingY;
+			Integer sample = null;
+			if (planar) {
+				sample = strip / stripsPerSample;
+				startingY = (strip % stripsPerSample) * rowsPerStrip;
+			} else {
+				startingY = strip * rowsPerStrip;
+			}
+			int endingY = Math.min(startingY + rowsPerStrip, height);
+
+			// Rows are read from the full rasters or a strip of the source
+			Rasters rowRasters = rasters;
+			int rowOffset = 0;
+			if (rowRasters == null) {
+				rowRasters = readStrip(startingY, endingY - startingY);
+				rowOffset = startingY;
+			}
+
+			// Write the strip of bytes
+			ByteWriter stripWriter = new ByteWriter(byteOrder);
+
+			for (int y = startingY; y < endingY; y++) {
+				byte[] rowBytes = null;
+				if (sample != null) {
+					rowBytes = rowRasters.getSampleRow(y - rowOffset, sample,
+							byteOrder);
+				} else {
+					rowBytes = rowRasters.getPixelRow(y - rowOffset,
+							byteOrder);
+				}
+				stripWriter.writeBytes(rowBytes);
+			}
+
+			byte[] stripBytes = stripWriter.getBytes();
+			stripWriter.close();
+			return stripBytes;
+		}
+
+		/**
+		 * Apply the predictor and compress the bytes of a strip. Only uses
+		 * local state and may be called concurrently.
+		 * 
+		 * @param strip
+		 *            strip index
+		 * @param stripBytes
+		 *            uncompressed strip bytes
+		 * @return encoded strip bytes
+		 */
+		private byte[] compress(int strip, byte[] stripBytes) {
+
+			int samplesPerPixel = planar ? 1 : fieldTypes.length;
+			int sampleBytes = fieldTypes[planar ? strip / stripsPerSample : 0]
+					.getBytes();
+			int rowBytes = width * samplesPerPixel * sampleBytes;
+			if (!planar) {
+				rowBytes = 0;
+				for (FieldType fieldType : fieldTypes) {
+					rowBytes += width * fieldType.getBytes();
+				}
+			}
+
+			if (predictor != TiffConstants.PREDICTOR_NO) {
+				Predictor.encode(predictor, stripBytes, rowBytes,
+						samplesPerPixel, sampleBytes, byteOrder);
+			}
+
+			if (!encoder.rowEncoding()) {
+				return encoder.encode(stripBytes, byteOrder);
+			}
+
+			// Encode each row
+			ByteArrayOutputStream encodedStream = new ByteArrayOutputStream(
+					stripBytes.length);
+			for (int row = 0; row < stripBytes.length; row += rowBytes) {
+				byte[] rowBytesEncoded = encoder.encode(Arrays.copyOfRange(
+						stripBytes, row, row + rowBytes), byteOrder);
+				encodedStream.write(rowBytesEncoded, 0, rowBytesEncoded.length);
+			}
+			return encodedStream.toByteArray();
+		}
+
+		/**
+		 * Read the rows of a strip from the strip source
+		 * 
+		 * @param y
+		 *            first image row
+		 * @param rows
+		 *            number of rows
+		 * @return strip rasters
+		 * @throws IOException
+		 */
+		private Rasters readStrip(int y, int rows) throws IOException {
+			if (stripRasters != null && stripRastersY == y
+					&& stripRasters.getHeight() == rows) {
+				return stripRasters;
+			}
+			if (stripRasters == null || stripRasters.getHeight() != rows) {
+				stripRasters = new Rasters(width, rows, fieldTypes);
+			}
+			stripRastersY = -1;
+			fileDirectory.getWriteStripSource().readStrip(y, stripRasters);
+			stripRastersY = y;
+			return stripRasters;
+		}
+
+	}
+
 }
@@ -17,13 +17,36 @@ import java.util.zip.Inflater;
 public class DeflateCompression implements CompressionDecoder,
 		CompressionEncoder {
 
+	/**
+	 * Compression level used when encoding
+	 */
+	private final int level;
+
+	/**
+	 * Constructor, encoding with the default compression level
+	 */
+	public DeflateCompression() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param level
+	 *            compression level used when encoding (0-9, or
+	 *            {@link Deflater#DEFAULT_COMPRESSION})
+	 */
+	public DeflateCompression(int level) {
+		this.level = level;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public byte[] decode(byte[] bytes, ByteOrder byteOrder) {
+		Inflater inflater = new Inflater();
 		try {
-			Inflater inflater = new Inflater();
 			inflater.setInput(bytes);  
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length);
 			byte[] buffer = new byte[1024];  
@@ -39,6 +62,8 @@ public class DeflateCompression implements CompressionDecoder,
 			throw new TiffException("Failed close decoded byte stream", e);
 		} catch (DataFormatException e) {
 			throw new TiffException("Data format error while decoding stream", e);
+		} finally {
+			inflater.end();
 		}
 	}
 
@@ -55,12 +80,12 @@ public class DeflateCompression implements CompressionDecoder,
 	 */
 	@Override
 	public byte[] encode(byte[] bytes, ByteOrder byteOrder) {
+		Deflater deflater = new Deflater(level);
 		try {
-			Deflater deflater = new Deflater();
 			deflater.setInput(bytes);
 			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length);
 			deflater.finish();
-			byte[] buffer = new byte[1024];
+			byte[] buffer = new byte[8192];
 			while (!deflater.finished()) {
 				int count = deflater.deflate(buffer); // returns the generated code... index
 				outputStream.write(buffer, 0, count);
@@ -71,6 +96,8 @@ public class DeflateCompression implements CompressionDecoder,
 			return output;
 		} catch (IOException e) {
 			throw new TiffException("Failed close encoded stream", e);
+		} finally {
+			deflater.end();
 		}
 	}
 }
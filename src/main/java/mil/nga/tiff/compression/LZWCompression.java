@@ -5,6 +5,7 @@ import mil.nga.tiff.util.TiffException;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -38,6 +39,21 @@ public class LZWCompression implements CompressionDecoder, CompressionEncoder {
 	 */
 	private static final int MIN_BITS = 9;
 
+	/**
+	 * Max bits
+	 */
+	private static final int MAX_BITS = 12;
+
+	/**
+	 * Max table code before the encoder clears the table
+	 */
+	private static final int MAX_CODE = (1 << MAX_BITS) - 2;
+
+	/**
+	 * Size of the encoder string table hash, a power of two
+	 */
+	private static final int HASH_SIZE = 1 << 13;
+
 	/**
 	 * Table entries
 	 */
@@ -154,7 +170,7 @@ public class LZWCompression implements CompressionDecoder, CompressionEncoder {
 	 * Check the byte length and increase if needed
 	 */
 	private void checkByteLength() {
-		if (maxCode >= Math.pow(2, byteLength) - 2) {
+		if (maxCode >= (1 << byteLength) - 2 && byteLength < MAX_BITS) {
 			byteLength++;
 		}
 	}
@@ -248,33 +264,23 @@ public class LZWCompression implements CompressionDecoder, CompressionEncoder {
 	 */
 	private int getByte(ByteReader reader) {
 
-		int d = position % 8;
-		int a = (int) Math.floor(position / 8.0);
-		int de = 8 - d;
-		int ef = (position + byteLength) - ((a + 1) * 8);
-		int fg = 8 * (a + 2) - (position + byteLength);
-		int dg = (a + 2) * 8 - position;
-		fg = Math.max(0, fg);
+		int a = position >>> 3;
+		int d = position & 7;
 		if (a >= reader.byteLength()) {
 			logger.log(Level.WARNING,
 					"End of data reached without an end of input code");
 			return EOI_CODE;
 		}
-		int chunk1 = ((int) reader.readUnsignedByte(a))
-				& ((int) (Math.pow(2, 8 - d) - 1));
-		chunk1 = chunk1 << (byteLength - de);
-		int chunks = chunk1;
+
+		// Codes are at most 12 bits and span at most 3 bytes, MSB first
+		int chunks = reader.readUnsignedByte(a) << 16;
 		if (a + 1 < reader.byteLength()) {
-			int chunk2 = reader.readUnsignedByte(a + 1) >>> fg;
-			chunk2 = chunk2 << Math.max(0, byteLength - dg);
-			chunks += chunk2;
+			chunks |= reader.readUnsignedByte(a + 1) << 8;
 		}
-		if (ef > 8 && a + 2 < reader.byteLength()) {
-			int hi = (a + 3) * 8 - (position + byteLength);
-			int chunk3 = reader.readUnsignedByte(a + 2) >>> hi;
-			chunks += chunk3;
+		if (a + 2 < reader.byteLength()) {
+			chunks |= reader.readUnsignedByte(a + 2);
 		}
-		return chunks;
+		return (chunks >>> (24 - d - byteLength)) & ((1 << byteLength) - 1);
 	}
 
 	/**
@@ -290,7 +296,152 @@ public class LZWCompression implements CompressionDecoder, CompressionEncoder {
 	 */
 	@Override
 	public byte[] encode(byte[] bytes, ByteOrder byteOrder) {
-		throw new TiffException("LZW encoder is not yet implemented");
+
+		// The encoder only uses local state and can be called concurrently
+		CodeWriter writer = new CodeWriter(bytes.length / 2 + 16);
+
+		// String table as open addressing hash of (prefix code, byte) keys
+		int[] hashKeys = new int[HASH_SIZE];
+		int[] hashCodes = new int[HASH_SIZE];
+		Arrays.fill(hashKeys, -1);
+
+		int codeLength = MIN_BITS;
+		int nextCode = EOI_CODE + 1;
+		writer.write(CLEAR_CODE, codeLength);
+
+		if (bytes.length > 0) {
+			int prefix = bytes[0] & 0xff;
+			for (int i = 1; i < bytes.length; i++) {
+				int value = bytes[i] & 0xff;
+				int key = (prefix << 8) | value;
+				int hash = hash(key);
+				while (hashKeys[hash] != -1 && hashKeys[hash] != key) {
+					hash = (hash + 1) & (HASH_SIZE - 1);
+				}
+				if (hashKeys[hash] == key) {
+					prefix = hashCodes[hash];
+					continue;
+				}
+
+				writer.write(prefix, codeLength);
+				hashKeys[hash] = key;
+				hashCodes[hash] = nextCode++;
+
+				if (nextCode > MAX_CODE) {
+					// Table full, clear and start over
+					writer.write(CLEAR_CODE, codeLength);
+					Arrays.fill(hashKeys, -1);
+					codeLength = MIN_BITS;
+					nextCode = EOI_CODE + 1;
+				} else if (nextCode > (1 << codeLength) - 1) {
+					codeLength++;
+				}
+				prefix = value;
+			}
+			writer.write(prefix, codeLength);
+
+			// The decoder adds a table entry for the last code before
+			// reading the end of information code
+			if (nextCode + 1 > (1 << codeLength) - 1
+					&& codeLength < MAX_BITS) {
+				codeLength++;
+			}
+		}
+
+		writer.write(EOI_CODE, codeLength);
+
+		return writer.toByteArray();
+	}
+
+	/**
+	 * Hash a string table key
+	 * 
+	 * @param key
+	 *            prefix code and byte key
+	 * @return hash index
+	 */
+	private static int hash(int key) {
+		return (key * 0x9E3779B1) >>> (32 - 13);
+	}
+
+	/**
+	 * Writes variable length codes, most significant bit first
+	 */
+	private static class CodeWriter {
+
+		/**
+		 * Written bytes
+		 */
+		private byte[] bytes;
+
+		/**
+		 * Number of written bytes
+		 */
+		private int size;
+
+		/**
+		 * Pending bits
+		 */
+		private long bitBuffer;
+
+		/**
+		 * Number of pending bits
+		 */
+		private int bitCount;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param capacity
+		 *            initial byte capacity
+		 */
+		CodeWriter(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		/**
+		 * Write a code
+		 * 
+		 * @param code
+		 *            code
+		 * @param codeLength
+		 *            code bit length
+		 */
+		void write(int code, int codeLength) {
+			bitBuffer = (bitBuffer << codeLength) | code;
+			bitCount += codeLength;
+			while (bitCount >= 8) {
+				bitCount -= 8;
+				writeByte((int) (bitBuffer >>> bitCount));
+			}
+		}
+
+		/**
+		 * Write a byte
+		 * 
+		 * @param value
+		 *            byte value
+		 */
+		private void writeByte(int value) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		/**
+		 * Flush the pending bits, zero padded, and get the written bytes
+		 * 
+		 * @return written bytes
+		 */
+		byte[] toByteArray() {
+			if (bitCount > 0) {
+				writeByte((int) (bitBuffer << (8 - bitCount)));
+				bitCount = 0;
+			}
+			return Arrays.copyOf(bytes, size);
+		}
+
 	}
 
 }
@@ -1,7 +1,6 @@
 package mil.nga.tiff.compression;
 
 import mil.nga.tiff.io.ByteReader;
-import mil.nga.tiff.util.TiffException;
 
 import java.io.ByteArrayOutputStream;
 import java.nio.ByteOrder;
@@ -59,7 +58,39 @@ public class PackbitsCompression implements CompressionDecoder,
 	 */
 	@Override
 	public byte[] encode(byte[] bytes, ByteOrder byteOrder) {
-		throw new TiffException("Packbits encoder is not yet implemented");
+
+		ByteArrayOutputStream encodedStream = new ByteArrayOutputStream(
+				bytes.length + (bytes.length + 127) / 128);
+
+		int i = 0;
+		while (i < bytes.length) {
+
+			// Length of the run of equal bytes starting here
+			int run = 1;
+			while (i + run < bytes.length && run < 128
+					&& bytes[i + run] == bytes[i]) {
+				run++;
+			}
+
+			if (run > 1) {
+				// Replicate run
+				encodedStream.write(1 - run);
+				encodedStream.write(bytes[i]);
+				i += run;
+			} else {
+				// Literal run up to the start of the next replicate run
+				int start = i;
+				i++;
+				while (i < bytes.length && i - start < 128
+						&& (i + 1 >= bytes.length || bytes[i] != bytes[i + 1])) {
+					i++;
+				}
+				encodedStream.write(i - start - 1);
+				encodedStream.write(bytes, start, i - start);
+			}
+		}
+
+		return encodedStream.toByteArray();
 	}
 
 }
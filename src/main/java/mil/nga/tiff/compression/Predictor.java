@@ -0,0 +1,212 @@
+package mil.nga.tiff.compression;
+
+import mil.nga.tiff.util.TiffConstants;
+import mil.nga.tiff.util.TiffException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Predictor applied to the rows of a block before compression and reversed
+ * after decompression. Supports horizontal differencing and the floating point
+ * predictor of the Adobe Photoshop TIFF Technical Note 3.
+ */
+public class Predictor {
+
+	/**
+	 * Apply the predictor to whole rows, in place
+	 * 
+	 * @param predictor
+	 *            predictor, see TiffConstants PREDICTOR_*
+	 * @param bytes
+	 *            block bytes
+	 * @param rowBytes
+	 *            bytes per row
+	 * @param samplesPerPixel
+	 *            samples per pixel within a row, 1 for planar blocks
+	 * @param bytesPerSample
+	 *            bytes per sample
+	 * @param byteOrder
+	 *            byte order of the samples
+	 * @return block bytes
+	 */
+	public static byte[] encode(int predictor, byte[] bytes, int rowBytes,
+			int samplesPerPixel, int bytesPerSample, ByteOrder byteOrder) {
+		switch (predictor) {
+		case TiffConstants.PREDICTOR_NO:
+			break;
+		case TiffConstants.PREDICTOR_HORIZONTAL:
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+			for (int row = 0; row + rowBytes <= bytes.length; row += rowBytes) {
+				for (int i = row + rowBytes - bytesPerSample; i >= row
+						+ samplesPerPixel * bytesPerSample; i -= bytesPerSample) {
+					addSample(buffer, i, bytesPerSample, i - samplesPerPixel
+							* bytesPerSample, -1);
+				}
+			}
+			break;
+		case TiffConstants.PREDICTOR_FLOATING_POINT:
+			byte[] planes = new byte[rowBytes];
+			for (int row = 0; row + rowBytes <= bytes.length; row += rowBytes) {
+				splitBytePlanes(bytes, row, planes, rowBytes, bytesPerSample,
+						byteOrder);
+				for (int i = rowBytes - 1; i >= samplesPerPixel; i--) {
+					planes[i] -= planes[i - samplesPerPixel];
+				}
+				System.arraycopy(planes, 0, bytes, row, rowBytes);
+			}
+			break;
+		default:
+			throw new TiffException("Unsupported predictor: " + predictor);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reverse the predictor of whole rows, in place
+	 * 
+	 * @param predictor
+	 *            predictor, see TiffConstants PREDICTOR_*
+	 * @param bytes
+	 *            block bytes
+	 * @param rowBytes
+	 *            bytes per row
+	 * @param samplesPerPixel
+	 *            samples per pixel within a row, 1 for planar blocks
+	 * @param bytesPerSample
+	 *            bytes per sample
+	 * @param byteOrder
+	 *            byte order of the samples
+	 * @return block bytes
+	 */
+	public static byte[] decode(int predictor, byte[] bytes, int rowBytes,
+			int samplesPerPixel, int bytesPerSample, ByteOrder byteOrder) {
+		switch (predictor) {
+		case TiffConstants.PREDICTOR_NO:
+			break;
+		case TiffConstants.PREDICTOR_HORIZONTAL:
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+			for (int row = 0; row + rowBytes <= bytes.length; row += rowBytes) {
+				for (int i = row + samplesPerPixel * bytesPerSample; i < row
+						+ rowBytes; i += bytesPerSample) {
+					addSample(buffer, i, bytesPerSample, i - samplesPerPixel
+							* bytesPerSample, 1);
+				}
+			}
+			break;
+		case TiffConstants.PREDICTOR_FLOATING_POINT:
+			byte[] planes = new byte[rowBytes];
+			for (int row = 0; row + rowBytes <= bytes.length; row += rowBytes) {
+				for (int i = row + samplesPerPixel; i < row + rowBytes; i++) {
+					bytes[i] += bytes[i - samplesPerPixel];
+				}
+				System.arraycopy(bytes, row, planes, 0, rowBytes);
+				joinBytePlanes(planes, bytes, row, rowBytes, bytesPerSample,
+						byteOrder);
+			}
+			break;
+		default:
+			throw new TiffException("Unsupported predictor: " + predictor);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Add or subtract the sample at another index to the sample at an index
+	 * 
+	 * @param buffer
+	 *            sample buffer
+	 * @param index
+	 *            byte index of the sample to change
+	 * @param bytesPerSample
+	 *            bytes per sample
+	 * @param otherIndex
+	 *            byte index of the other sample
+	 * @param sign
+	 *            1 to add, -1 to subtract
+	 */
+	private static void addSample(ByteBuffer buffer, int index,
+			int bytesPerSample, int otherIndex, int sign) {
+		switch (bytesPerSample) {
+		case 1:
+			buffer.put(index,
+					(byte) (buffer.get(index) + sign * buffer.get(otherIndex)));
+			break;
+		case 2:
+			buffer.putShort(index, (short) (buffer.getShort(index) + sign
+					* buffer.getShort(otherIndex)));
+			break;
+		case 4:
+			buffer.putInt(index,
+					buffer.getInt(index) + sign * buffer.getInt(otherIndex));
+			break;
+		case 8:
+			buffer.putLong(index,
+					buffer.getLong(index) + sign * buffer.getLong(otherIndex));
+			break;
+		default:
+			throw new TiffException("Unsupported predictor sample size: "
+					+ bytesPerSample);
+		}
+	}
+
+	/**
+	 * Split a row of samples into byte planes, most significant bytes first
+	 * 
+	 * @param bytes
+	 *            source bytes
+	 * @param offset
+	 *            source row offset
+	 * @param planes
+	 *            destination byte planes
+	 * @param rowBytes
+	 *            bytes per row
+	 * @param bytesPerSample
+	 *            bytes per sample
+	 * @param byteOrder
+	 *            byte order of the samples
+	 */
+	private static void splitBytePlanes(byte[] bytes, int offset,
+			byte[] planes, int rowBytes, int bytesPerSample,
+			ByteOrder byteOrder) {
+		int count = rowBytes / bytesPerSample;
+		boolean bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+		for (int sample = 0; sample < count; sample++) {
+			for (int b = 0; b < bytesPerSample; b++) {
+				int plane = bigEndian ? b : bytesPerSample - 1 - b;
+				planes[plane * count + sample] = bytes[offset + sample
+						* bytesPerSample + b];
+			}
+		}
+	}
+
+	/**
+	 * Join byte planes, most significant bytes first, into a row of samples
+	 * 
+	 * @param planes
+	 *            source byte planes
+	 * @param bytes
+	 *            destination bytes
+	 * @param offset
+	 *            destination row offset
+	 * @param rowBytes
+	 *            bytes per row
+	 * @param bytesPerSample
+	 *            bytes per sample
+	 * @param byteOrder
+	 *            byte order of the samples
+	 */
+	private static void joinBytePlanes(byte[] planes, byte[] bytes,
+			int offset, int rowBytes, int bytesPerSample, ByteOrder byteOrder) {
+		int count = rowBytes / bytesPerSample;
+		boolean bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+		for (int sample = 0; sample < count; sample++) {
+			for (int b = 0; b < bytesPerSample; b++) {
+				int plane = bigEndian ? b : bytesPerSample - 1 - b;
+				bytes[offset + sample * bytesPerSample + b] = planes[plane
+						* count + sample];
+			}
+		}
+	}
+
+}
@@ -4,10 +4,9 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
 /**
- * Read through a byte array
+ * Read through a byte array or byte buffer
  * 
  * @author osbornb
  */
@@ -21,7 +20,7 @@ public class ByteReader {
 	/**
 	 * Bytes to read
 	 */
-	private final byte[] bytes;
+	private final ByteBuffer bytes;
 
 	/**
 	 * Byte order
@@ -47,8 +46,32 @@ public class ByteReader {
 	 *            byte order
 	 */
 	public ByteReader(byte[] bytes, ByteOrder byteOrder) {
-		this.bytes = bytes;
-		this.byteOrder = byteOrder;
+		this(ByteBuffer.wrap(bytes), byteOrder);
+	}
+
+	/**
+	 * Constructor, reads the bytes between the position and the limit of the
+	 * buffer without copying them
+	 * 
+	 * @param bytes
+	 *            byte buffer, for example a memory mapped file
+	 */
+	public ByteReader(ByteBuffer bytes) {
+		this(bytes, ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Constructor, reads the bytes between the position and the limit of the
+	 * buffer without copying them
+	 * 
+	 * @param bytes
+	 *            byte buffer, for example a memory mapped file
+	 * @param byteOrder
+	 *            byte order
+	 */
+	public ByteReader(ByteBuffer bytes, ByteOrder byteOrder) {
+		this.bytes = bytes.slice();
+		setByteOrder(byteOrder);
 	}
 
 	/**
@@ -87,6 +110,7 @@ public class ByteReader {
 	 */
 	public void setByteOrder(ByteOrder byteOrder) {
 		this.byteOrder = byteOrder;
+		bytes.order(byteOrder);
 	}
 
 	/**
@@ -130,7 +154,7 @@ public class ByteReader {
 	 * @return true if has at least the number of bytes left
 	 */
 	public boolean hasBytes(int offset, int count) {
-		return offset + count <= bytes.length;
+		return offset + count <= bytes.limit();
 	}
 
 	/**
@@ -163,8 +187,9 @@ public class ByteReader {
 			throws UnsupportedEncodingException {
 		verifyRemainingBytes(offset, num);
 		String value = null;
-		if (num != 1 || bytes[offset] != 0) {
-			value = new String(bytes, offset, num, StandardCharsets.US_ASCII);
+		if (num != 1 || bytes.get(offset) != 0) {
+			value = new String(readBytes(offset, num),
+					StandardCharsets.US_ASCII);
 		}
 		return value;
 	}
@@ -189,7 +214,7 @@ public class ByteReader {
 	 */
 	public byte readByte(int offset) {
 		verifyRemainingBytes(offset, 1);
-		byte value = bytes[offset];
+		byte value = bytes.get(offset);
 		return value;
 	}
 
@@ -239,7 +264,10 @@ public class ByteReader {
 	 */
 	public byte[] readBytes(int offset, int num) {
 		verifyRemainingBytes(offset, num);
-		byte[] readBytes = Arrays.copyOfRange(bytes, offset, offset + num);
+		byte[] readBytes = new byte[num];
+		ByteBuffer source = bytes.duplicate();
+		source.position(offset);
+		source.get(readBytes);
 		return readBytes;
 	}
 
@@ -263,8 +291,7 @@ public class ByteReader {
 	 */
 	public short readShort(int offset) {
 		verifyRemainingBytes(offset, 2);
-		short value = ByteBuffer.wrap(bytes, offset, 2).order(byteOrder)
-				.getShort();
+		short value = bytes.getShort(offset);
 		return value;
 	}
 
@@ -310,7 +337,7 @@ public class ByteReader {
 	 */
 	public int readInt(int offset) {
 		verifyRemainingBytes(offset, 4);
-		int value = ByteBuffer.wrap(bytes, offset, 4).order(byteOrder).getInt();
+		int value = bytes.getInt(offset);
 		return value;
 	}
 
@@ -356,8 +383,7 @@ public class ByteReader {
 	 */
 	public float readFloat(int offset) {
 		verifyRemainingBytes(offset, 4);
-		float value = ByteBuffer.wrap(bytes, offset, 4).order(byteOrder)
-				.getFloat();
+		float value = bytes.getFloat(offset);
 		return value;
 	}
 
@@ -381,8 +407,7 @@ public class ByteReader {
 	 */
 	public double readDouble(int offset) {
 		verifyRemainingBytes(offset, 8);
-		double value = ByteBuffer.wrap(bytes, offset, 8).order(byteOrder)
-				.getDouble();
+		double value = bytes.getDouble(offset);
 		return value;
 	}
 
@@ -392,7 +417,7 @@ public class ByteReader {
 	 * @return byte length
 	 */
 	public int byteLength() {
-		return bytes.length;
+		return bytes.limit();
 	}
 
 	/**
@@ -405,10 +430,10 @@ public class ByteReader {
 	 *            number of bytes to read
 	 */
 	private void verifyRemainingBytes(int offset, int bytesToRead) {
-		if (offset + bytesToRead > bytes.length) {
+		if (offset + bytesToRead > bytes.limit()) {
 			throw new IllegalStateException(
 					"No more remaining bytes to read. Total Bytes: "
-							+ bytes.length + ", Byte offset: " + offset
+							+ bytes.limit() + ", Byte offset: " + offset
 							+ ", Attempted to read: " + bytesToRead);
 		}
 	}
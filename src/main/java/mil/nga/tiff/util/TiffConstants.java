@@ -97,6 +97,11 @@ public class TiffConstants {
 	public static final int PLANAR_CONFIGURATION_CHUNKY = 1;
 	public static final int PLANAR_CONFIGURATION_PLANAR = 2;
 
+	// Predictor constants
+	public static final int PREDICTOR_NO = 1;
+	public static final int PREDICTOR_HORIZONTAL = 2;
+	public static final int PREDICTOR_FLOATING_POINT = 3;
+
 	// Resolution Unit constants
 	public static final int RESOLUTION_UNIT_NO = 1;
 	public static final int RESOLUTION_UNIT_INCH = 2;
@@ -0,0 +1,122 @@
+package io.github.jdiemke.triangulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares incremental changes of a triangulation with the triangulation of
+ * the whole point set.
+ */
+public class DelaunayTriangulatorTest {
+
+    @Test
+    public void testAddPoint() throws NotEnoughPointsException {
+        for (int seed = 0; seed < 200; seed++) {
+            Random random = new Random(seed);
+            List<Vector2D> points = new ArrayList<Vector2D>();
+            for (int i = 0; i < 3; i++) {
+                points.add(randomPoint(random, 900, 900));
+            }
+            DelaunayTriangulator triangulator = new DelaunayTriangulator(points);
+            triangulator.triangulate();
+
+            for (int i = 0; i < 20; i++) {
+                triangulator.addPoint(randomPoint(random, 6000, 4000));
+                assertSameTriangulation("seed " + seed + " add " + i, triangulator);
+            }
+        }
+    }
+
+    @Test
+    public void testAddPointInsideBounds() throws NotEnoughPointsException {
+        for (int seed = 0; seed < 50; seed++) {
+            Random random = new Random(seed);
+            List<Vector2D> points = new ArrayList<Vector2D>();
+            points.add(new Vector2D(0, 0));
+            points.add(new Vector2D(6000, 0));
+            points.add(new Vector2D(0, 4000));
+            DelaunayTriangulator triangulator = new DelaunayTriangulator(points);
+            triangulator.triangulate();
+
+            for (int i = 0; i < 60; i++) {
+                triangulator.addPoint(randomPoint(random, 6000, 4000));
+                assertSameTriangulation("seed " + seed + " add " + i, triangulator);
+            }
+        }
+    }
+
+    @Test
+    public void testRemovePoint() throws NotEnoughPointsException {
+        for (int seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            List<Vector2D> points = new ArrayList<Vector2D>();
+            for (int i = 0; i < 40; i++) {
+                points.add(randomPoint(random, 6000, 4000));
+            }
+            DelaunayTriangulator triangulator = new DelaunayTriangulator(points);
+            triangulator.triangulate();
+
+            for (int i = 0; i < 35; i++) {
+                List<Vector2D> pointSet = triangulator.getPointSet();
+                triangulator.removePoint(pointSet.get(random.nextInt(pointSet.size())));
+                assertSameTriangulation("seed " + seed + " remove " + i, triangulator);
+            }
+        }
+    }
+
+    @Test
+    public void testAddAndRemovePoint() throws NotEnoughPointsException {
+        for (int seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            List<Vector2D> points = new ArrayList<Vector2D>();
+            for (int i = 0; i < 5; i++) {
+                points.add(randomPoint(random, 3000, 2000));
+            }
+            DelaunayTriangulator triangulator = new DelaunayTriangulator(points);
+            triangulator.triangulate();
+
+            for (int i = 0; i < 40; i++) {
+                List<Vector2D> pointSet = triangulator.getPointSet();
+                if (pointSet.size() > 3 && random.nextInt(3) == 0) {
+                    triangulator.removePoint(pointSet.get(random.nextInt(pointSet.size())));
+                } else {
+                    triangulator.addPoint(randomPoint(random, 6000, 4000));
+                }
+                assertSameTriangulation("seed " + seed + " step " + i, triangulator);
+            }
+        }
+    }
+
+    private static Vector2D randomPoint(Random random, int width, int height) {
+        return new Vector2D(random.nextInt(width), random.nextInt(height));
+    }
+
+    private static void assertSameTriangulation(String message, DelaunayTriangulator triangulator)
+            throws NotEnoughPointsException {
+        DelaunayTriangulator expected = new DelaunayTriangulator(new ArrayList<Vector2D>(triangulator.getPointSet()));
+        expected.triangulate();
+
+        assertEquals(message, toKeys(expected.getTriangles()), toKeys(triangulator.getTriangles()));
+    }
+
+    private static List<String> toKeys(List<Triangle2D> triangles) {
+        List<String> keys = new ArrayList<String>();
+        for (Triangle2D triangle : triangles) {
+            List<String> vertices = new ArrayList<String>();
+            vertices.add(triangle.a.x + "," + triangle.a.y);
+            vertices.add(triangle.b.x + "," + triangle.b.y);
+            vertices.add(triangle.c.x + "," + triangle.c.y);
+            Collections.sort(vertices);
+            keys.add(vertices.toString());
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+}